@@ -0,0 +1,58 @@
+package com.janedler.benchmark;
+
+import com.janedler.core.Clock;
+import com.janedler.core.Scheduler;
+import com.janedler.core.ToastRecord;
+import com.janedler.core.ToastScheduler;
+
+/**
+ * A {@link ToastScheduler} whose toasts appear and disappear instantly and whose timeouts only
+ * fire when the benchmark says so, leaving nothing but the core's own work to measure.
+ */
+final class BenchmarkScheduler implements Clock, Scheduler, ToastScheduler.Display {
+
+    final ToastScheduler scheduler = new ToastScheduler(this, this, this);
+    long now;
+
+    @Override
+    public long uptimeMillis() {
+        return now;
+    }
+
+    @Override
+    public void schedule(Runnable task, long delayMillis) {
+        // Timeouts are triggered by hand with timeoutCurrent()
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+    }
+
+    @Override
+    public boolean show(ToastRecord record) {
+        scheduler.onShown(record);
+        return true;
+    }
+
+    @Override
+    public boolean dismiss(ToastRecord record, int event) {
+        return false;
+    }
+
+    /**
+     * Time out the toast on screen, which shows the next one.
+     */
+    void timeoutCurrent() {
+        now++;
+        scheduler.timeout(scheduler.getCurrent());
+    }
+
+    static ToastRecord[] newRecords(int count) {
+        final ToastRecord[] records = new ToastRecord[count];
+        for (int i = 0; i < count; i++) {
+            records[i] = new ToastRecord();
+            records[i].setDurationMs(2000);
+        }
+        return records;
+    }
+}
@@ -0,0 +1,115 @@
+package com.janedler.benchmark;
+
+import com.janedler.core.ToastRecord;
+import com.janedler.core.ToastScheduler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Producers enqueueing toasts from worker threads while one thread plays the main thread and
+ * keeps timing out the toast on screen.
+ * <p>
+ * {@code locked} mirrors V1, where every thread takes the service's lock around the scheduler.
+ * {@code handoff} mirrors V2, where workers only push onto a lock-free queue and the main thread
+ * drains it into the scheduler. The defaults are 3 producers and 1 consumer; change the
+ * producer count with e.g. {@code -tg 1,1}, {@code -tg 7,1}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ContendedEnqueueBenchmark {
+
+    private static final int RECORDS_PER_THREAD = ToastScheduler.DEFAULT_CAPACITY * 2;
+    /**
+     * Producers are much faster than the consumer; stop offering beyond this backlog so the
+     * pending queue doesn't grow for the whole iteration.
+     */
+    private static final int MAX_PENDING = 1024;
+
+    @State(Scope.Group)
+    public static class Shared {
+        final Object lock = new Object();
+        final ConcurrentLinkedQueue<ToastRecord> pending = new ConcurrentLinkedQueue<>();
+        final AtomicInteger pendingCount = new AtomicInteger();
+        BenchmarkScheduler bench;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            bench = new BenchmarkScheduler();
+            pending.clear();
+            pendingCount.set(0);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+        ToastRecord[] records;
+        int next;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            records = BenchmarkScheduler.newRecords(RECORDS_PER_THREAD);
+        }
+
+        ToastRecord next() {
+            final ToastRecord record = records[next];
+            next = (next + 1) % records.length;
+            return record;
+        }
+    }
+
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(3)
+    public int lockedEnqueue(Shared shared, Producer producer) {
+        final ToastRecord record = producer.next();
+        synchronized (shared.lock) {
+            return shared.bench.scheduler.enqueue(record);
+        }
+    }
+
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(1)
+    public void lockedTimeout(Shared shared) {
+        synchronized (shared.lock) {
+            shared.bench.timeoutCurrent();
+        }
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(3)
+    public boolean handoffEnqueue(Shared shared, Producer producer) {
+        if (shared.pendingCount.get() >= MAX_PENDING) {
+            return false;
+        }
+        shared.pendingCount.incrementAndGet();
+        return shared.pending.offer(producer.next());
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public void handoffDrain(Shared shared) {
+        final BenchmarkScheduler bench = shared.bench;
+        ToastRecord record;
+        while ((record = shared.pending.poll()) != null) {
+            shared.pendingCount.decrementAndGet();
+            bench.scheduler.enqueue(record);
+        }
+        bench.timeoutCurrent();
+    }
+}
@@ -0,0 +1,80 @@
+package com.janedler.benchmark;
+
+import com.janedler.core.ToastRecord;
+import com.janedler.core.ToastScheduler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded cost of the scheduling core, i.e. what the main thread pays per toast.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class ToastSchedulerBenchmark {
+
+    private static final int CAPACITY = ToastScheduler.DEFAULT_CAPACITY;
+
+    @Param({"0", "1", "3"})
+    public int overflowPolicy;
+
+    private BenchmarkScheduler mBench;
+    private ToastRecord mRecord;
+    private ToastRecord[] mRecords;
+    private int mNext;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        mBench = new BenchmarkScheduler();
+        mBench.scheduler.setOverflowPolicy(overflowPolicy);
+        mRecord = BenchmarkScheduler.newRecords(1)[0];
+        // The one on screen, a full queue, and spares to rotate through
+        mRecords = BenchmarkScheduler.newRecords(CAPACITY * 2 + 1);
+        for (int i = 0; i <= CAPACITY; i++) {
+            mBench.scheduler.enqueue(mRecords[i]);
+        }
+        mNext = CAPACITY + 1;
+    }
+
+    /**
+     * Enqueue onto an idle screen, show, time out and dismiss.
+     */
+    @Benchmark
+    public int showTimeoutDismiss() {
+        final BenchmarkScheduler bench = mBench;
+        while (bench.scheduler.getCurrent() != null) {
+            bench.timeoutCurrent();
+        }
+        final int result = bench.scheduler.enqueue(mRecord);
+        bench.timeoutCurrent();
+        return result;
+    }
+
+    /**
+     * Enqueue behind a full queue, which drops or rejects according to the overflow policy.
+     */
+    @Benchmark
+    public int enqueueIntoFullQueue() {
+        final ToastRecord[] records = mRecords;
+        ToastRecord record = records[mNext];
+        if (++mNext == records.length) {
+            mNext = 0;
+        }
+        if (record == mBench.scheduler.getCurrent()
+                || record.getState() == ToastRecord.STATE_QUEUED) {
+            // Still in use under OVERFLOW_DROP_NEWEST, which never drops anything queued
+            return ToastScheduler.RESULT_UPDATED;
+        }
+        return mBench.scheduler.enqueue(record);
+    }
+}
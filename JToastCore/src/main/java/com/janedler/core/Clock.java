@@ -0,0 +1,23 @@
+package com.janedler.core;
+
+/**
+ * Source of time for {@link ToastScheduler}. Android adapters use
+ * {@code SystemClock.uptimeMillis()}, tests and simulations use a clock they advance by hand.
+ */
+public interface Clock {
+
+    /**
+     * Milliseconds since an arbitrary, fixed origin. Must never go backwards.
+     */
+    long uptimeMillis();
+
+    /**
+     * Monotonic wall time, for running the core outside Android.
+     */
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long uptimeMillis() {
+            return System.nanoTime() / 1000000L;
+        }
+    };
+}
@@ -0,0 +1,225 @@
+package com.janedler.core;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands operations over to the thread that owns a {@link ToastScheduler} without locking.
+ * <p>
+ * Operations posted on the owner thread are applied straight away; operations from other threads
+ * are pushed onto a lock-free stack and applied in order by {@link #drain()} on the owner thread,
+ * so a worker never waits for the owner and the owner never waits for a worker.
+ * <p>
+ * However many operations and producers there are, the owner is asked to drain at most once until
+ * that drain starts, so an owner which drains once per frame wakes up at most once per frame.
+ * <p>
+ * The nodes carrying deferred operations are recycled once applied, so posting doesn't allocate
+ * after warm-up. A node is only allocated when the pool is empty: during a burst larger than any
+ * before it, or when two producers reach for the pool at the same moment.
+ */
+public final class OpQueue {
+
+    /**
+     * Applies operations, always on the owner thread.
+     */
+    public interface Target {
+        /**
+         * @param extra a second object the operation was posted with, or null
+         */
+        void apply(int op, Object subject, Object extra, int arg);
+    }
+
+    /**
+     * The owner thread, e.g. the main looper.
+     */
+    public interface Owner {
+        boolean isOwnerThread();
+
+        /**
+         * Arrange for {@link OpQueue#drain()} to run on the owner thread soon. Called at most
+         * once until that drain starts.
+         */
+        void requestDrain();
+    }
+
+    /**
+     * Recycled nodes kept beyond this are left to the garbage collector.
+     */
+    static final int MAX_POOL_SIZE = 64;
+
+    private static final class PendingOp {
+        int op;
+        Object subject;
+        Object extra;
+        int arg;
+        PendingOp next;
+    }
+
+    private final Target mTarget;
+    private final Owner mOwner;
+
+    /**
+     * Posted operations, newest first. Producers push, {@link #drain()} takes them all at once.
+     */
+    private final AtomicReference<PendingOp> mPosted = new AtomicReference<>();
+    /**
+     * Operations taken over by {@link #drain()} and not applied yet, oldest first. Owner thread
+     * only.
+     */
+    private PendingOp mHead;
+    private PendingOp mTail;
+    /**
+     * Recycled nodes. Taken whole with {@code getAndSet} rather than popped one by one, which
+     * would be open to ABA between producers.
+     */
+    private final AtomicReference<PendingOp> mPool = new AtomicReference<>();
+    private final AtomicInteger mPoolSize = new AtomicInteger();
+    private final AtomicBoolean mDrainScheduled = new AtomicBoolean(false);
+
+    public OpQueue(Target target, Owner owner) {
+        mTarget = target;
+        mOwner = owner;
+    }
+
+    /**
+     * Apply the operation now if we're on the owner thread, otherwise hand it over without
+     * blocking.
+     */
+    public void post(int op, Object subject, int arg) {
+        post(op, subject, null, arg);
+    }
+
+    /**
+     * Like {@link #post(int, Object, int)}, with a second object captured on the caller's thread
+     * together with the operation.
+     */
+    public void post(int op, Object subject, Object extra, int arg) {
+        if (mOwner.isOwnerThread()) {
+            if (mHead != null || mPosted.get() != null) {
+                // Keep the order of anything posted before us
+                drain();
+            }
+            mTarget.apply(op, subject, extra, arg);
+            return;
+        }
+        postDeferred(op, subject, extra, arg);
+    }
+
+    /**
+     * Hand the operation over to the next {@link #drain()}, even on the owner thread, e.g. to
+     * batch it with the rest of a frame's work or to keep it out of the caller's lock.
+     */
+    public void postDeferred(int op, Object subject, int arg) {
+        postDeferred(op, subject, null, arg);
+    }
+
+    /**
+     * Like {@link #postDeferred(int, Object, int)}, with a second object.
+     */
+    public void postDeferred(int op, Object subject, Object extra, int arg) {
+        final PendingOp node = obtain();
+        node.op = op;
+        node.subject = subject;
+        node.extra = extra;
+        node.arg = arg;
+        PendingOp head;
+        do {
+            head = mPosted.get();
+            node.next = head;
+        } while (!mPosted.compareAndSet(head, node));
+        if (mDrainScheduled.compareAndSet(false, true)) {
+            mOwner.requestDrain();
+        }
+    }
+
+    /**
+     * Apply every operation posted so far. Must be called on the owner thread.
+     */
+    public void drain() {
+        // Reset the flag before taking over: anything pushed afterwards requests a new drain
+        mDrainScheduled.set(false);
+        while (takeOverPosted()) {
+            // mHead is re-read every time: an operation may post, and drain, on its own
+            while (mHead != null) {
+                final PendingOp node = mHead;
+                mHead = node.next;
+                if (mHead == null) {
+                    mTail = null;
+                }
+                final int op = node.op;
+                final Object subject = node.subject;
+                final Object extra = node.extra;
+                final int arg = node.arg;
+                recycle(node);
+                mTarget.apply(op, subject, extra, arg);
+            }
+        }
+    }
+
+    /**
+     * Move the posted operations behind the ones already taken over, in the order they were
+     * posted.
+     *
+     * @return whether there is anything to apply
+     */
+    private boolean takeOverPosted() {
+        PendingOp posted = mPosted.getAndSet(null);
+        if (posted != null) {
+            // Newest first, reverse it
+            final PendingOp last = posted;
+            PendingOp reversed = null;
+            while (posted != null) {
+                final PendingOp next = posted.next;
+                posted.next = reversed;
+                reversed = posted;
+                posted = next;
+            }
+            if (mTail == null) {
+                mHead = reversed;
+            } else {
+                mTail.next = reversed;
+            }
+            mTail = last;
+        }
+        return mHead != null;
+    }
+
+    private PendingOp obtain() {
+        final PendingOp pooled = mPool.getAndSet(null);
+        if (pooled == null) {
+            return new PendingOp();
+        }
+        mPoolSize.decrementAndGet();
+        final PendingOp rest = pooled.next;
+        pooled.next = null;
+        if (rest != null && !mPool.compareAndSet(null, rest)) {
+            // Someone recycled meanwhile, put the rest back behind their nodes
+            PendingOp tail = rest;
+            while (tail.next != null) {
+                tail = tail.next;
+            }
+            push(mPool, rest, tail);
+        }
+        return pooled;
+    }
+
+    private void recycle(PendingOp node) {
+        node.subject = null;
+        node.extra = null;
+        if (mPoolSize.get() >= MAX_POOL_SIZE) {
+            node.next = null;
+            return;
+        }
+        mPoolSize.incrementAndGet();
+        push(mPool, node, node);
+    }
+
+    private static void push(AtomicReference<PendingOp> stack, PendingOp first, PendingOp last) {
+        PendingOp head;
+        do {
+            head = stack.get();
+            last.next = head;
+        } while (!stack.compareAndSet(head, first));
+    }
+}
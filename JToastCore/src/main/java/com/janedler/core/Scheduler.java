@@ -0,0 +1,20 @@
+package com.janedler.core;
+
+/**
+ * Runs delayed tasks for {@link ToastScheduler}, e.g. a {@code Handler} on the main looper.
+ * Tasks must run on the same thread (or under the same lock) as every other call into the
+ * {@link ToastScheduler} they belong to.
+ */
+public interface Scheduler {
+
+    /**
+     * Run {@code task} once after {@code delayMillis}. The same task may be scheduled again
+     * after it ran or was cancelled.
+     */
+    void schedule(Runnable task, long delayMillis);
+
+    /**
+     * Remove every pending run of {@code task}, matched by identity.
+     */
+    void cancel(Runnable task);
+}
@@ -0,0 +1,112 @@
+package com.janedler.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A small LRU of text layouts built ahead of time, shared by the toast implementations. What a
+ * layout is (a {@code StaticLayout} and its measurements on Android) is up to the caller.
+ * <p>
+ * Entries are keyed by the characters of the text together with the text size and width it was
+ * laid out for, never by the {@link CharSequence} itself: a styled text may be mutated, and its
+ * {@code equals} is usually identity. A styled text only matches the very instance it was built
+ * from, since the same characters with other spans lay out differently.
+ * <p>
+ * Thread-safe: layouts are built on a worker and looked up on the main thread.
+ *
+ * @param <L> the layout type
+ */
+public final class TextLayoutCache<L> {
+
+    /**
+     * Shorter plain messages fit on one line and are cheap enough to measure on the main thread.
+     */
+    public static final int MIN_PRECOMPUTE_LENGTH = 48;
+
+    private static final class Key {
+        final String text;
+        /**
+         * The text itself when it is not a plain {@link String}, compared by identity.
+         */
+        final CharSequence styled;
+        final float textSize;
+        final int width;
+
+        Key(CharSequence text, float textSize, int width) {
+            this.text = text.toString();
+            this.styled = text instanceof String ? null : text;
+            this.textSize = textSize;
+            this.width = width;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return styled == other.styled && width == other.width
+                    && Float.compare(textSize, other.textSize) == 0 && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return (text.hashCode() * 31 + Float.floatToIntBits(textSize)) * 31 + width;
+        }
+    }
+
+    private final LinkedHashMap<Key, L> mEntries;
+    private int mGeneration;
+
+    public TextLayoutCache(final int maxSize) {
+        mEntries = new LinkedHashMap<Key, L>(maxSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, L> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Whether {@code text} is worth laying out ahead of time: long texts, and anything which is
+     * not a plain {@link String} since it may carry spans.
+     */
+    public static boolean shouldPrecompute(CharSequence text) {
+        return text != null && (!(text instanceof String) || text.length() >= MIN_PRECOMPUTE_LENGTH);
+    }
+
+    /**
+     * @return the layout of {@code text} for the given text size and width, or null
+     */
+    public synchronized L get(CharSequence text, float textSize, int width) {
+        if (text == null) {
+            return null;
+        }
+        return mEntries.get(new Key(text, textSize, width));
+    }
+
+    /**
+     * Cache {@code layout}, unless the cache has been cleared since {@code generation}.
+     *
+     * @param generation the value of {@link #getGeneration()} when the layout was started
+     */
+    public synchronized void put(CharSequence text, float textSize, int width, int generation,
+                                 L layout) {
+        if (generation == mGeneration) {
+            mEntries.put(new Key(text, textSize, width), layout);
+        }
+    }
+
+    public synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Drop every layout, e.g. after a configuration change. Layouts still being built are not
+     * cached either.
+     */
+    public synchronized void clear() {
+        mGeneration++;
+        mEntries.clear();
+    }
+}
@@ -0,0 +1,204 @@
+package com.janedler.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Independent display lanes, each one a {@link ToastScheduler} with its own queue, capacity and
+ * timeout. Lanes show their toasts at the same time, so a burst in one lane never delays the
+ * toasts of another, and throughput grows with the number of lanes in use.
+ * <p>
+ * Lanes are created on first use and share the overflow policy, preemption priority,
+ * aggregation and default capacity set here; a lane may override the capacity. What a lane is
+ * keyed by, e.g. a gravity or a caller's channel, is up to the caller.
+ * <p>
+ * A lane with nothing on screen and nothing queued is idle. Idle lanes are dropped, together
+ * with their keys, the next time a lane is created for a new key, so callers may use short-lived
+ * keys without keeping a scheduler (or whatever the key references) per key forever. A busy lane
+ * is never dropped, and a lane which stays in use is not recreated for every toast.
+ * <p>
+ * Not thread-safe, for the same reasons as {@link ToastScheduler}: every call, and every call to
+ * a lane, must be serialized by the caller.
+ */
+public class ToastLanes {
+
+    /**
+     * Creates the scheduler of a new lane, with its own {@link ToastScheduler.Display} and
+     * listener if needed. The lane's settings are applied afterwards.
+     */
+    public interface Factory {
+        ToastScheduler create(Object key);
+
+        /**
+         * The idle lane for {@code key} has been dropped, release anything kept for it. The
+         * next toast for {@code key} gets a new lane from {@link #create(Object)}.
+         */
+        void onEvicted(Object key, ToastScheduler lane);
+    }
+
+    private final Factory mFactory;
+
+    private final HashMap<Object, ToastScheduler> mLanes = new HashMap<>();
+    /**
+     * The values of {@link #mLanes}, walked by index so that summing the queue depths after
+     * every operation doesn't allocate an iterator.
+     */
+    private final ArrayList<ToastScheduler> mLaneList = new ArrayList<>();
+    private final HashMap<Object, Integer> mLaneCapacities = new HashMap<>();
+
+    private int mCapacity = ToastScheduler.DEFAULT_CAPACITY;
+    private int mOverflowPolicy = ToastScheduler.OVERFLOW_DROP_OLDEST;
+    private int mPreemptionPriority = Integer.MAX_VALUE;
+    private ToastScheduler.Aggregator mAggregator;
+    private int mAggregationThreshold;
+    private long mAggregationWindowMs;
+
+    public ToastLanes(Factory factory) {
+        mFactory = factory;
+    }
+
+    /**
+     * Return the lane for {@code key}, creating it if needed. {@code null} is a valid key.
+     */
+    public ToastScheduler get(Object key) {
+        ToastScheduler lane = mLanes.get(key);
+        if (lane == null) {
+            evictIdleLanes();
+            lane = mFactory.create(key);
+            final Integer capacity = mLaneCapacities.get(key);
+            lane.setCapacity(capacity != null ? capacity : mCapacity);
+            lane.setOverflowPolicy(mOverflowPolicy);
+            lane.setPreemptionPriority(mPreemptionPriority);
+            lane.setAggregation(mAggregator, mAggregationThreshold, mAggregationWindowMs);
+            mLanes.put(key, lane);
+            mLaneList.add(lane);
+        }
+        return lane;
+    }
+
+    /**
+     * Drop every lane which has nothing on screen and nothing queued.
+     */
+    private void evictIdleLanes() {
+        final Iterator<Map.Entry<Object, ToastScheduler>> it = mLanes.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<Object, ToastScheduler> entry = it.next();
+            final ToastScheduler lane = entry.getValue();
+            if (lane.getCurrent() == null && lane.getQueueDepth() == 0) {
+                it.remove();
+                mLaneList.remove(lane);
+                mFactory.onEvicted(entry.getKey(), lane);
+            }
+        }
+    }
+
+    /**
+     * Set how many toasts may wait in every lane which has no capacity of its own.
+     */
+    public void setCapacity(int capacity) {
+        mCapacity = Math.max(1, capacity);
+        for (HashMap.Entry<Object, ToastScheduler> entry : mLanes.entrySet()) {
+            if (!mLaneCapacities.containsKey(entry.getKey())) {
+                entry.getValue().setCapacity(mCapacity);
+            }
+        }
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Set how many toasts may wait in the lane for {@code key}, or go back to the shared capacity
+     * if {@code capacity} is 0 or less. The setting outlives the lane until it is reset, so
+     * don't set it for short-lived keys.
+     */
+    public void setLaneCapacity(Object key, int capacity) {
+        if (capacity > 0) {
+            mLaneCapacities.put(key, capacity);
+        } else {
+            mLaneCapacities.remove(key);
+        }
+        final ToastScheduler lane = mLanes.get(key);
+        if (lane != null) {
+            lane.setCapacity(capacity > 0 ? capacity : mCapacity);
+        }
+    }
+
+    public void setOverflowPolicy(int policy) {
+        mOverflowPolicy = policy;
+        for (int i = 0, size = mLaneList.size(); i < size; i++) {
+            mLaneList.get(i).setOverflowPolicy(policy);
+        }
+    }
+
+    public int getOverflowPolicy() {
+        return mOverflowPolicy;
+    }
+
+    /**
+     * See {@link ToastScheduler#setPreemptionPriority(int)}; a toast only preempts within its lane.
+     */
+    public void setPreemptionPriority(int priority) {
+        mPreemptionPriority = priority;
+        for (int i = 0, size = mLaneList.size(); i < size; i++) {
+            mLaneList.get(i).setPreemptionPriority(priority);
+        }
+    }
+
+    public int getPreemptionPriority() {
+        return mPreemptionPriority;
+    }
+
+    /**
+     * Aggregate bursts in every lane on its own, see
+     * {@link ToastScheduler#setAggregation(ToastScheduler.Aggregator, int, long)}.
+     */
+    public void setAggregation(ToastScheduler.Aggregator aggregator, int threshold, long windowMs) {
+        mAggregator = aggregator;
+        mAggregationThreshold = threshold;
+        mAggregationWindowMs = windowMs;
+        for (int i = 0, size = mLaneList.size(); i < size; i++) {
+            mLaneList.get(i).setAggregation(aggregator, threshold, windowMs);
+        }
+    }
+
+    /**
+     * @return the number of toasts waiting in all lanes, not counting those on screen
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (int i = 0, size = mLaneList.size(); i < size; i++) {
+            depth += mLaneList.get(i).getQueueDepth();
+        }
+        return depth;
+    }
+
+    /**
+     * @return the number of lanes, not counting the idle ones which have been dropped
+     */
+    public int getLaneCount() {
+        return mLaneList.size();
+    }
+
+    /**
+     * Add the queued records of every lane to {@code out}, lane by lane in creation order.
+     */
+    public void copyQueueTo(Collection<? super ToastRecord> out) {
+        for (int i = 0, size = mLaneList.size(); i < size; i++) {
+            mLaneList.get(i).copyQueueTo(out);
+        }
+    }
+
+    /**
+     * {@link ToastScheduler#clearQueue()} every lane.
+     */
+    public void clearQueue() {
+        for (int i = 0, size = mLaneList.size(); i < size; i++) {
+            mLaneList.get(i).clearQueue();
+        }
+    }
+}
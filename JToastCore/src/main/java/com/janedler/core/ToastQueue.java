@@ -0,0 +1,238 @@
+package com.janedler.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * The waiting toasts of a {@link ToastScheduler}: a binary heap which hands out the most important
+ * record first, and records of the same priority in the order they were queued.
+ * <p>
+ * Every record remembers its slot in the heap, so inserting, polling and removing any record are
+ * all O(log n). The priority a record is ordered by is the one it had when it was queued, see
+ * {@link #update(ToastRecord)}.
+ */
+final class ToastQueue {
+
+    private ToastRecord[] mHeap;
+    private int mSize;
+    /**
+     * Sequence numbers for the tail grow and those for the head shrink, so both ends stay in FIFO
+     * order within a priority.
+     */
+    private long mTailSequence;
+    private long mHeadSequence = -1;
+
+    ToastQueue(int initialCapacity) {
+        mHeap = new ToastRecord[Math.max(1, initialCapacity)];
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * Queue {@code record} behind every record of the same priority.
+     */
+    void offer(ToastRecord record) {
+        insert(record, mTailSequence++);
+    }
+
+    /**
+     * Queue {@code record} ahead of every record of the same priority.
+     */
+    void offerFirst(ToastRecord record) {
+        insert(record, mHeadSequence--);
+    }
+
+    /**
+     * Put back a record taken off the queue, in the place it had before.
+     */
+    void restore(ToastRecord record) {
+        insert(record, record.mQueueSequence);
+    }
+
+    /**
+     * @return the next record to show, or null if the queue is empty
+     */
+    ToastRecord poll() {
+        if (mSize == 0) {
+            return null;
+        }
+        final ToastRecord head = mHeap[0];
+        removeAt(0);
+        return head;
+    }
+
+    boolean contains(ToastRecord record) {
+        final int index = record.mQueueIndex;
+        return index >= 0 && index < mSize && mHeap[index] == record;
+    }
+
+    boolean remove(ToastRecord record) {
+        if (!contains(record)) {
+            return false;
+        }
+        removeAt(record.mQueueIndex);
+        return true;
+    }
+
+    /**
+     * Move {@code record} to its new place if its priority changed while it was queued. It keeps
+     * its place among the records of its new priority that were queued before and after it.
+     */
+    void update(ToastRecord record) {
+        if (!contains(record) || record.mQueuePriority == record.getPriority()) {
+            return;
+        }
+        record.mQueuePriority = record.getPriority();
+        final int index = record.mQueueIndex;
+        siftUp(index);
+        if (mHeap[index] == record) {
+            siftDown(index);
+        }
+    }
+
+    void clear() {
+        for (int i = 0; i < mSize; i++) {
+            mHeap[i].mQueueIndex = -1;
+            mHeap[i] = null;
+        }
+        mSize = 0;
+    }
+
+    /**
+     * @return the queued record at {@code index}, in no particular order
+     */
+    ToastRecord get(int index) {
+        return mHeap[index];
+    }
+
+    /**
+     * Find the queued record which matters least: the lowest priority, and among those the first
+     * or last one in showing order.
+     *
+     * @param maxPriority ignore records more important than this
+     * @return null if every record is more important than {@code maxPriority}
+     */
+    ToastRecord findLowest(int maxPriority, boolean last) {
+        ToastRecord lowest = null;
+        for (int i = 0; i < mSize; i++) {
+            final ToastRecord record = mHeap[i];
+            if (record.mQueuePriority > maxPriority) {
+                continue;
+            }
+            if (lowest == null || record.mQueuePriority < lowest.mQueuePriority
+                    || (record.mQueuePriority == lowest.mQueuePriority
+                    && (record.mQueueSequence > lowest.mQueueSequence) == last)) {
+                lowest = record;
+            }
+        }
+        return lowest;
+    }
+
+    /**
+     * Add every queued record to {@code out}, in showing order.
+     */
+    void copyTo(Collection<? super ToastRecord> out, ArrayList<ToastRecord> scratch) {
+        scratch.clear();
+        for (int i = 0; i < mSize; i++) {
+            scratch.add(mHeap[i]);
+        }
+        sort(scratch, false);
+        for (int i = 0, size = scratch.size(); i < size; i++) {
+            out.add(scratch.get(i));
+        }
+        scratch.clear();
+    }
+
+    /**
+     * Sort {@code records} in showing order, or in the order they were queued if
+     * {@code byArrival}. An insertion sort: queues are short, and it allocates nothing.
+     */
+    static void sort(ArrayList<ToastRecord> records, boolean byArrival) {
+        for (int i = 1, size = records.size(); i < size; i++) {
+            final ToastRecord record = records.get(i);
+            int j = i - 1;
+            while (j >= 0 && (byArrival
+                    ? record.mQueueSequence < records.get(j).mQueueSequence
+                    : before(record, records.get(j)))) {
+                records.set(j + 1, records.get(j));
+                j--;
+            }
+            records.set(j + 1, record);
+        }
+    }
+
+    private static boolean before(ToastRecord a, ToastRecord b) {
+        if (a.mQueuePriority != b.mQueuePriority) {
+            return a.mQueuePriority > b.mQueuePriority;
+        }
+        return a.mQueueSequence < b.mQueueSequence;
+    }
+
+    private void insert(ToastRecord record, long sequence) {
+        if (mSize == mHeap.length) {
+            final ToastRecord[] heap = new ToastRecord[mSize * 2];
+            System.arraycopy(mHeap, 0, heap, 0, mSize);
+            mHeap = heap;
+        }
+        record.mQueuePriority = record.getPriority();
+        record.mQueueSequence = sequence;
+        mHeap[mSize] = record;
+        record.mQueueIndex = mSize;
+        siftUp(mSize++);
+    }
+
+    private void removeAt(int index) {
+        final ToastRecord removed = mHeap[index];
+        removed.mQueueIndex = -1;
+        final int last = --mSize;
+        if (index == last) {
+            mHeap[last] = null;
+            return;
+        }
+        final ToastRecord moved = mHeap[last];
+        mHeap[last] = null;
+        set(index, moved);
+        siftUp(index);
+        if (mHeap[index] == moved) {
+            siftDown(index);
+        }
+    }
+
+    private void siftUp(int index) {
+        final ToastRecord record = mHeap[index];
+        while (index > 0) {
+            final int parent = (index - 1) >>> 1;
+            if (!before(record, mHeap[parent])) {
+                break;
+            }
+            set(index, mHeap[parent]);
+            index = parent;
+        }
+        set(index, record);
+    }
+
+    private void siftDown(int index) {
+        final ToastRecord record = mHeap[index];
+        final int half = mSize >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            final int right = child + 1;
+            if (right < mSize && before(mHeap[right], mHeap[child])) {
+                child = right;
+            }
+            if (!before(mHeap[child], record)) {
+                break;
+            }
+            set(index, mHeap[child]);
+            index = child;
+        }
+        set(index, record);
+    }
+
+    private void set(int index, ToastRecord record) {
+        mHeap[index] = record;
+        record.mQueueIndex = index;
+    }
+}
@@ -0,0 +1,147 @@
+package com.janedler.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A toast known to a {@link ToastScheduler}. Moves through
+ * QUEUED -> SHOWING -> SHOWN -> DISMISSING -> DISMISSED; every transition is a compare-and-set,
+ * so a record is shown and dismissed at most once, e.g. when a timeout and a manual dismiss race
+ * each other.
+ * <p>
+ * Adapters extend this class (or keep one instance per toast) and reuse it every time the same
+ * toast is shown again, so enqueueing allocates nothing.
+ */
+public class ToastRecord {
+
+    public static final int STATE_IDLE = 0;
+    public static final int STATE_QUEUED = 1;
+    public static final int STATE_SHOWING = 2;
+    public static final int STATE_SHOWN = 3;
+    public static final int STATE_DISMISSING = 4;
+    public static final int STATE_DISMISSED = 5;
+
+    /**
+     * {@link #getDurationMs()} of a toast which stays until it is dismissed.
+     */
+    public static final int DURATION_INDEFINITE = -1;
+
+    private final AtomicInteger mState = new AtomicInteger(STATE_IDLE);
+    private int mDurationMs;
+    private int mPriority;
+    private int mDismissEvent;
+    private long mEnqueueTime;
+    private long mShownTime;
+
+    // Owned by the ToastScheduler: the time a preempted toast has left, see #NOT_PREEMPTED
+    static final int NOT_PREEMPTED = Integer.MIN_VALUE;
+    int mRemainingMs = NOT_PREEMPTED;
+
+    // Owned by the ToastQueue the record is waiting in
+    int mQueueIndex = -1;
+    int mQueuePriority;
+    long mQueueSequence;
+
+    public final int getState() {
+        return mState.get();
+    }
+
+    /**
+     * @return true from the moment the record is queued until it has been dismissed or dropped,
+     * i.e. while it belongs to a {@link ToastScheduler}
+     */
+    public final boolean isActive() {
+        final int state = mState.get();
+        return state != STATE_IDLE && state != STATE_DISMISSED;
+    }
+
+    final void setState(int state) {
+        mState.set(state);
+    }
+
+    final boolean compareAndSetState(int expect, int update) {
+        return mState.compareAndSet(expect, update);
+    }
+
+    /**
+     * Move to DISMISSING from any state before it.
+     *
+     * @return the previous state, or -1 if the record was already being dismissed
+     */
+    final int markDismissing() {
+        int current;
+        do {
+            current = mState.get();
+            if (current >= STATE_DISMISSING) {
+                return -1;
+            }
+        } while (!mState.compareAndSet(current, STATE_DISMISSING));
+        return current;
+    }
+
+    final void reset(long now) {
+        mDismissEvent = 0;
+        mEnqueueTime = now;
+        mShownTime = 0;
+        mRemainingMs = NOT_PREEMPTED;
+        mState.set(STATE_QUEUED);
+    }
+
+    /**
+     * @return how long the toast stays once shown, or {@link #DURATION_INDEFINITE}
+     */
+    public final int getDurationMs() {
+        return mDurationMs;
+    }
+
+    /**
+     * Set before {@link ToastScheduler#enqueue}; changing it while the toast is showing takes
+     * effect when its timeout is next scheduled.
+     */
+    public final void setDurationMs(int durationMs) {
+        mDurationMs = durationMs < 0 ? DURATION_INDEFINITE : durationMs;
+    }
+
+    public final int getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * Higher values are more important. Queued toasts are shown by priority, in FIFO order within
+     * the same priority; overflow drops the least important first, and a toast at or above
+     * {@link ToastScheduler#setPreemptionPriority(int)} preempts a less important one on screen.
+     * Changing it while queued takes effect when the record is next enqueued.
+     */
+    public final void setPriority(int priority) {
+        mPriority = priority;
+    }
+
+    /**
+     * @return the event this record was dismissed or dropped with, once it is DISMISSING
+     */
+    public final int getDismissEvent() {
+        return mDismissEvent;
+    }
+
+    final void setDismissEvent(int event) {
+        mDismissEvent = event;
+    }
+
+    /**
+     * @return {@link Clock#uptimeMillis()} when the record was last enqueued
+     */
+    public final long getEnqueueTime() {
+        return mEnqueueTime;
+    }
+
+    /**
+     * @return {@link Clock#uptimeMillis()} when the record was last reported shown, or 0 if it
+     * never was
+     */
+    public final long getShownTime() {
+        return mShownTime;
+    }
+
+    final void setShownTime(long shownTime) {
+        mShownTime = shownTime;
+    }
+}
@@ -0,0 +1,663 @@
+package com.janedler.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Android-free scheduling core shared by the JToast managers: a bounded priority queue with
+ * overflow policies, one toast on screen at a time, and its timeout.
+ * <p>
+ * Queued toasts are shown by {@link ToastRecord#getPriority() priority}, in FIFO order within the
+ * same priority. A toast at or above the {@link #setPreemptionPriority(int) preemption priority}
+ * takes the screen from a less important one, which goes back to the head of its priority and is
+ * later shown for the time it had left.
+ * <p>
+ * Time comes from a {@link Clock} and timeouts run on a {@link Scheduler}, so the same code runs
+ * on the main looper in the app and against a virtual clock in JVM tests and benchmarks. What
+ * showing and hiding means is up to the {@link Display}.
+ * <p>
+ * Not thread-safe: every call, including the tasks given to the {@link Scheduler}, must be
+ * serialized by the caller, either by confining the scheduler to one thread or by guarding it
+ * with a lock. Nothing is allocated once every record has been enqueued once.
+ */
+public class ToastScheduler {
+
+    /**
+     * Drop the oldest queued toast of the lowest priority to make room.
+     */
+    public static final int OVERFLOW_DROP_OLDEST = 0;
+    /**
+     * Reject the toast being enqueued.
+     */
+    public static final int OVERFLOW_DROP_NEWEST = 1;
+    /**
+     * Put the new toast at the head of its priority and dismiss the current one, unless the
+     * current one is more important; the tail of the lowest priority is dropped when full.
+     */
+    public static final int OVERFLOW_REPLACE_CURRENT = 2;
+    /**
+     * Drop the oldest queued toast with the lowest priority, as long as it's not more important
+     * than the one being enqueued; otherwise reject the new one.
+     */
+    public static final int OVERFLOW_DROP_LOWEST_PRIORITY = 3;
+
+    /**
+     * The record is showing or waiting to be shown.
+     */
+    public static final int RESULT_QUEUED = 0;
+    /**
+     * The record was already showing or queued, only its duration (and possibly its place in the
+     * queue) was updated.
+     */
+    public static final int RESULT_UPDATED = 1;
+    /**
+     * The queue was full and the record was rejected, it stays IDLE.
+     */
+    public static final int RESULT_REJECTED = 2;
+    /**
+     * The record was the least important toast of a full queue and the overflow policy dropped
+     * it right away. Unlike {@link #RESULT_REJECTED} it has already been reported to the
+     * {@link Display} and {@link Listener} with {@link #EVENT_CONSECUTIVE}.
+     */
+    public static final int RESULT_DROPPED = 3;
+
+    // Same values as JToast.Callback's dismiss events in V2
+    public static final int EVENT_TIMEOUT = 2;
+    public static final int EVENT_MANUAL = 3;
+    public static final int EVENT_CONSECUTIVE = 4;
+    /**
+     * The record was collapsed into a summary by the {@link Aggregator}.
+     */
+    public static final int EVENT_AGGREGATED = 5;
+    /**
+     * The record left the screen for a more important one and is queued again, see
+     * {@link #setPreemptionPriority(int)}. Not a final event: the {@link Display} should only hide
+     * it.
+     */
+    public static final int EVENT_PREEMPTED = 6;
+
+    public static final int DEFAULT_CAPACITY = 8;
+
+    /**
+     * Shows and hides toasts for the scheduler. Called synchronously from within scheduler calls.
+     */
+    public interface Display {
+        /**
+         * Start showing {@code record}. Call {@link ToastScheduler#onShown(ToastRecord)} once it
+         * is visible, which may happen from within this call.
+         *
+         * @return false if the toast can't be shown any more; it is skipped
+         */
+        boolean show(ToastRecord record);
+
+        /**
+         * Hide {@code record}, or tell its owner that it was dropped from the queue before it was
+         * shown. For the current toast, call {@link ToastScheduler#onDismissed(ToastRecord)} once
+         * it is gone.
+         *
+         * @return false if there is nothing to wait for; the current toast is then treated as
+         * dismissed right away
+         */
+        boolean dismiss(ToastRecord record, int event);
+    }
+
+    /**
+     * Collapses a burst of queued toasts into one summary toast, see
+     * {@link #setAggregation(Aggregator, int, long)}.
+     */
+    public interface Aggregator {
+        /**
+         * Build the toast shown in place of {@code collapsed}. The records are taken off the
+         * queue before this call, so a toast enqueued meanwhile never sees them, and are dropped
+         * with {@link #EVENT_AGGREGATED} afterwards, or put back in place if null is returned.
+         * One of them may be a summary returned earlier.
+         *
+         * @param collapsed every record that was queued, oldest first; only valid during this call
+         * @return an idle record to queue in their place, or null to leave the queue alone
+         */
+        ToastRecord aggregate(List<ToastRecord> collapsed);
+    }
+
+    /**
+     * Observes transitions, e.g. for metrics and tracing. All methods are empty by default.
+     */
+    public static abstract class Listener {
+        /**
+         * @param queueDepth number of toasts waiting behind the current one, once this one has
+         *                   been shown or queued
+         */
+        public void onEnqueued(ToastRecord record, int queueDepth) {
+            // empty
+        }
+
+        public void onShow(ToastRecord record, int queueDepth) {
+            // empty
+        }
+
+        public void onShown(ToastRecord record) {
+            // empty
+        }
+
+        public void onTimeout(ToastRecord record) {
+            // empty
+        }
+
+        public void onDismiss(ToastRecord record, int event) {
+            // empty
+        }
+
+        /**
+         * {@code record} left the queue without ever being shown.
+         */
+        public void onDropped(ToastRecord record, int event) {
+            // empty
+        }
+
+        public void onDismissed(ToastRecord record) {
+            // empty
+        }
+    }
+
+    private final Clock mClock;
+    private final Scheduler mScheduler;
+    private final Display mDisplay;
+    private Listener mListener;
+
+    private ToastRecord mCurrent;
+    /**
+     * Records waiting to be shown. Never holds more than {@link #mCapacity}.
+     */
+    private final ToastQueue mQueue = new ToastQueue(DEFAULT_CAPACITY);
+    private int mCapacity = DEFAULT_CAPACITY;
+    private int mOverflowPolicy = OVERFLOW_DROP_OLDEST;
+    private int mPreemptionPriority = Integer.MAX_VALUE;
+    /**
+     * How long {@link #mCurrent} has left once it is back from preemption, or -1 if it isn't
+     * being preempted.
+     */
+    private int mPreemptedRemainingMs = -1;
+
+    private Aggregator mAggregator;
+    private int mAggregationThreshold;
+    private long mAggregationWindowMs;
+    /**
+     * Enqueue times of the last {@link #mAggregationThreshold} arrivals, as a ring.
+     */
+    private long[] mArrivalTimes;
+    private int mArrivalIndex;
+    private int mArrivalCount;
+    private final ArrayList<ToastRecord> mCollapsed = new ArrayList<>();
+    /**
+     * Set while the {@link Aggregator} runs, so a toast it enqueues doesn't aggregate again.
+     */
+    private boolean mAggregating;
+    private final ArrayList<ToastRecord> mSorted = new ArrayList<>();
+
+    /**
+     * The one timeout task, always for {@link #mCurrent}.
+     */
+    private final Runnable mTimeoutTask = new Runnable() {
+        @Override
+        public void run() {
+            timeout(mCurrent);
+        }
+    };
+
+    public ToastScheduler(Clock clock, Scheduler scheduler, Display display) {
+        mClock = clock;
+        mScheduler = scheduler;
+        mDisplay = display;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Set how many toasts may wait behind the current one, dropping toasts beyond it according to
+     * the overflow policy.
+     */
+    public void setCapacity(int capacity) {
+        mCapacity = Math.max(1, capacity);
+        trimQueue();
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public void setOverflowPolicy(int policy) {
+        mOverflowPolicy = policy;
+    }
+
+    public int getOverflowPolicy() {
+        return mOverflowPolicy;
+    }
+
+    /**
+     * Let toasts of at least {@code priority} preempt a less important toast on screen. The
+     * preempted toast is hidden with {@link #EVENT_PREEMPTED} and queued again at the head of its
+     * priority, with the rest of its duration. Off ({@link Integer#MAX_VALUE}) by default; has
+     * no effect with {@link #OVERFLOW_REPLACE_CURRENT}, which already replaces the current toast.
+     */
+    public void setPreemptionPriority(int priority) {
+        mPreemptionPriority = priority;
+    }
+
+    public int getPreemptionPriority() {
+        return mPreemptionPriority;
+    }
+
+    /**
+     * Collapse the queue into one summary toast from {@code aggregator} whenever a burst arrives:
+     * as soon as {@code threshold} toasts are waiting, or {@code threshold} toasts were enqueued
+     * within {@code windowMs} while at least two are waiting. However long the burst, it then
+     * takes the screen time of a single toast. The threshold should not exceed the capacity;
+     * {@link #OVERFLOW_REPLACE_CURRENT} never builds a backlog and is left alone.
+     *
+     * @param aggregator null to turn aggregation off
+     * @param windowMs   0 to only aggregate on queue depth
+     */
+    public void setAggregation(Aggregator aggregator, int threshold, long windowMs) {
+        mAggregator = aggregator;
+        mAggregationThreshold = Math.max(2, threshold);
+        mAggregationWindowMs = Math.max(0, windowMs);
+        mArrivalTimes = aggregator != null ? new long[mAggregationThreshold] : null;
+        mArrivalIndex = 0;
+        mArrivalCount = 0;
+    }
+
+    /**
+     * @return the number of toasts waiting behind the current one
+     */
+    public int getQueueDepth() {
+        return mQueue.size();
+    }
+
+    /**
+     * @return the toast being shown or dismissed, or null
+     */
+    public ToastRecord getCurrent() {
+        return mCurrent;
+    }
+
+    /**
+     * Add every queued record to {@code out}, in showing order.
+     */
+    public void copyQueueTo(Collection<? super ToastRecord> out) {
+        mQueue.copyTo(out, mSorted);
+    }
+
+    /**
+     * Queue {@code record}, showing it right away if nothing else is. Enqueueing a record which is
+     * already showing or queued only refreshes it: a showing record restarts its timeout.
+     *
+     * @return one of {@link #RESULT_QUEUED}, {@link #RESULT_UPDATED}, {@link #RESULT_REJECTED}
+     * or {@link #RESULT_DROPPED}
+     */
+    public int enqueue(ToastRecord record) {
+        if (record == mCurrent) {
+            // Enqueued again by the caller, it gets its full duration back
+            record.mRemainingMs = ToastRecord.NOT_PREEMPTED;
+            if (record.getState() == ToastRecord.STATE_SHOWN) {
+                scheduleTimeout(record);
+            }
+            return RESULT_UPDATED;
+        }
+
+        final boolean queued = record.getState() == ToastRecord.STATE_QUEUED;
+        if (queued) {
+            record.mRemainingMs = ToastRecord.NOT_PREEMPTED;
+            if (mOverflowPolicy != OVERFLOW_REPLACE_CURRENT) {
+                // Keep its place in the queue, within its possibly new priority
+                mQueue.update(record);
+                if (shouldPreempt(record)) {
+                    preemptCurrent();
+                }
+                return RESULT_UPDATED;
+            }
+            mQueue.remove(record);
+        }
+
+        if (mCurrent == null) {
+            // Nothing is showing, just show it now
+            if (!queued) {
+                record.reset(mClock.uptimeMillis());
+            }
+            notifyEnqueued(record, mQueue.size());
+            mQueue.offerFirst(record);
+            showNext();
+            return queued ? RESULT_UPDATED : RESULT_QUEUED;
+        }
+
+        switch (mOverflowPolicy) {
+            case OVERFLOW_REPLACE_CURRENT:
+                if (!queued) {
+                    record.reset(mClock.uptimeMillis());
+                }
+                // Jump the queue, it is shown once the current toast has been dismissed
+                mQueue.offerFirst(record);
+                trimQueue();
+                if (!mQueue.contains(record)) {
+                    // The least important of a full queue, already dropped by trimQueue()
+                    return RESULT_DROPPED;
+                }
+                notifyEnqueued(record, mQueue.size());
+                if (mCurrent.getPriority() <= record.getPriority()) {
+                    dismissCurrent(EVENT_CONSECUTIVE);
+                }
+                return queued ? RESULT_UPDATED : RESULT_QUEUED;
+            case OVERFLOW_DROP_NEWEST:
+                if (mQueue.size() >= mCapacity) {
+                    return RESULT_REJECTED;
+                }
+                break;
+            case OVERFLOW_DROP_LOWEST_PRIORITY:
+                if (mQueue.size() >= mCapacity) {
+                    final ToastRecord victim = mQueue.findLowest(record.getPriority(), false);
+                    if (victim == null) {
+                        return RESULT_REJECTED;
+                    }
+                    mQueue.remove(victim);
+                    drop(victim, EVENT_CONSECUTIVE);
+                }
+                break;
+            case OVERFLOW_DROP_OLDEST:
+            default:
+                break;
+        }
+        record.reset(mClock.uptimeMillis());
+        mQueue.offer(record);
+        trimQueue();
+        if (!mQueue.contains(record)) {
+            // The least important of a full queue, already dropped by trimQueue()
+            return RESULT_DROPPED;
+        }
+        notifyEnqueued(record, mQueue.size());
+        if (shouldPreempt(record)) {
+            // Not aggregated, it is shown right away
+            preemptCurrent();
+        } else if (mAggregator != null && isBurst(record.getEnqueueTime()) && !mAggregating) {
+            aggregate();
+        }
+        return RESULT_QUEUED;
+    }
+
+    /**
+     * Dismiss {@code record} if it is showing, or drop it if it is queued.
+     *
+     * @return false if the record was neither
+     */
+    public boolean dismiss(ToastRecord record, int event) {
+        if (record == mCurrent) {
+            if (mPreemptedRemainingMs >= 0) {
+                // Already being hidden, just don't queue it again afterwards
+                record.setDismissEvent(event);
+                return true;
+            }
+            dismissCurrent(event);
+            return true;
+        }
+        if (record.getState() == ToastRecord.STATE_QUEUED && mQueue.remove(record)) {
+            drop(record, event);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Report that {@code record} became visible; starts its timeout.
+     */
+    public void onShown(ToastRecord record) {
+        if (record == mCurrent
+                && record.compareAndSetState(ToastRecord.STATE_SHOWING, ToastRecord.STATE_SHOWN)) {
+            record.setShownTime(mClock.uptimeMillis());
+            if (mListener != null) {
+                mListener.onShown(record);
+            }
+            scheduleTimeout(record);
+        }
+    }
+
+    /**
+     * Report that {@code record} is no longer visible; the next toast is shown.
+     */
+    public void onDismissed(ToastRecord record) {
+        if (record == mCurrent) {
+            finishCurrent();
+        }
+    }
+
+    /**
+     * Stop the timeout of {@code record} while it is showing, e.g. while the user touches it.
+     */
+    public void pauseTimeout(ToastRecord record) {
+        if (record == mCurrent) {
+            mScheduler.cancel(mTimeoutTask);
+        }
+    }
+
+    /**
+     * Restart the full timeout of {@code record} after {@link #pauseTimeout(ToastRecord)}.
+     */
+    public void resumeTimeout(ToastRecord record) {
+        if (record == mCurrent && record.getState() == ToastRecord.STATE_SHOWN) {
+            scheduleTimeout(record);
+        }
+    }
+
+    /**
+     * Dismiss {@code record} with {@link #EVENT_TIMEOUT} if it is the toast on screen. Normally
+     * called by the scheduled timeout task.
+     */
+    public void timeout(ToastRecord record) {
+        if (record != null && record == mCurrent
+                && record.getState() == ToastRecord.STATE_SHOWN) {
+            if (mListener != null) {
+                mListener.onTimeout(record);
+            }
+            dismissCurrent(EVENT_TIMEOUT);
+        }
+    }
+
+    /**
+     * Forget every queued record without notifying the {@link Display}. The current toast is
+     * left alone.
+     */
+    public void clearQueue() {
+        ToastRecord record;
+        while ((record = mQueue.poll()) != null) {
+            record.setState(ToastRecord.STATE_DISMISSED);
+        }
+    }
+
+    private void notifyEnqueued(ToastRecord record, int queueDepth) {
+        if (mListener != null) {
+            mListener.onEnqueued(record, queueDepth);
+        }
+    }
+
+    /**
+     * Count an arrival at {@code now} and tell whether the queue should be aggregated.
+     */
+    private boolean isBurst(long now) {
+        final long[] times = mArrivalTimes;
+        times[mArrivalIndex] = now;
+        mArrivalIndex = (mArrivalIndex + 1) % times.length;
+        if (mArrivalCount < times.length) {
+            mArrivalCount++;
+        }
+        // Once the ring is full, the next slot holds the oldest of the last threshold arrivals
+        final boolean fast = mAggregationWindowMs > 0 && mArrivalCount == times.length
+                && now - times[mArrivalIndex] <= mAggregationWindowMs;
+        return mQueue.size() >= mAggregationThreshold || (fast && mQueue.size() >= 2);
+    }
+
+    private void aggregate() {
+        final ArrayList<ToastRecord> collapsed = mCollapsed;
+        // Take them off the queue first, the aggregator may enqueue toasts of its own
+        ToastRecord record;
+        while ((record = mQueue.poll()) != null) {
+            collapsed.add(record);
+        }
+        // Oldest first, whatever their priority
+        ToastQueue.sort(collapsed, true);
+        final ToastRecord summary;
+        mAggregating = true;
+        try {
+            summary = mAggregator.aggregate(collapsed);
+            if (summary == null) {
+                for (int i = 0, size = collapsed.size(); i < size; i++) {
+                    mQueue.restore(collapsed.get(i));
+                }
+                return;
+            }
+            for (int i = 0, size = collapsed.size(); i < size; i++) {
+                drop(collapsed.get(i), EVENT_AGGREGATED);
+            }
+        } finally {
+            mAggregating = false;
+            collapsed.clear();
+        }
+        summary.reset(mClock.uptimeMillis());
+        mQueue.offer(summary);
+        notifyEnqueued(summary, mQueue.size());
+    }
+
+    /**
+     * Drop queued records until the queue fits into its capacity, the least important first.
+     */
+    private void trimQueue() {
+        while (mQueue.size() > mCapacity) {
+            // OVERFLOW_REPLACE_CURRENT drops from the tail, the other policies from the head
+            final ToastRecord dropped = mQueue.findLowest(Integer.MAX_VALUE,
+                    mOverflowPolicy == OVERFLOW_REPLACE_CURRENT);
+            mQueue.remove(dropped);
+            drop(dropped, EVENT_CONSECUTIVE);
+        }
+    }
+
+    private boolean shouldPreempt(ToastRecord record) {
+        return mCurrent != null && mCurrent != record
+                && mOverflowPolicy != OVERFLOW_REPLACE_CURRENT
+                && record.getState() == ToastRecord.STATE_QUEUED
+                && record.getPriority() >= mPreemptionPriority
+                && record.getPriority() > mCurrent.getPriority()
+                && mCurrent.getState() < ToastRecord.STATE_DISMISSING;
+    }
+
+    /**
+     * Take the screen from the current toast, to queue it again with what's left of its duration
+     * once it has been hidden.
+     */
+    private void preemptCurrent() {
+        final ToastRecord record = mCurrent;
+        int remainingMs = getTimeLeftMs(record);
+        if (remainingMs != ToastRecord.DURATION_INDEFINITE
+                && record.getState() == ToastRecord.STATE_SHOWN) {
+            final long elapsedMs = mClock.uptimeMillis() - record.getShownTime();
+            if (elapsedMs >= remainingMs) {
+                // Its time is up anyway
+                timeout(record);
+                return;
+            }
+            remainingMs -= (int) elapsedMs;
+        }
+        mPreemptedRemainingMs = remainingMs == ToastRecord.DURATION_INDEFINITE
+                ? Integer.MAX_VALUE : remainingMs;
+        dismissCurrent(EVENT_PREEMPTED);
+    }
+
+    private void drop(ToastRecord record, int event) {
+        if (record.markDismissing() < 0) {
+            return;
+        }
+        record.setDismissEvent(event);
+        if (mListener != null) {
+            mListener.onDropped(record, event);
+        }
+        record.setState(ToastRecord.STATE_DISMISSED);
+        mDisplay.dismiss(record, event);
+    }
+
+    private void dismissCurrent(int event) {
+        final ToastRecord record = mCurrent;
+        if (record.markDismissing() < 0) {
+            // Already on its way out
+            return;
+        }
+        record.setDismissEvent(event);
+        mScheduler.cancel(mTimeoutTask);
+        if (mListener != null) {
+            mListener.onDismiss(record, event);
+        }
+        if (!mDisplay.dismiss(record, event) && record == mCurrent) {
+            // Nobody is left to report onDismissed, move on by ourselves
+            finishCurrent();
+        }
+    }
+
+    private void finishCurrent() {
+        final ToastRecord record = mCurrent;
+        final boolean preempted = record.getDismissEvent() == EVENT_PREEMPTED;
+        final int remainingMs = mPreemptedRemainingMs;
+        mPreemptedRemainingMs = -1;
+        record.setState(ToastRecord.STATE_DISMISSED);
+        mCurrent = null;
+        mScheduler.cancel(mTimeoutTask);
+        if (mListener != null) {
+            mListener.onDismissed(record);
+        }
+        if (remainingMs >= 0 && preempted) {
+            // Back to the head of its priority, ahead of the toasts which waited behind it. Its
+            // own duration is left alone for when the caller enqueues it again
+            record.mRemainingMs = remainingMs == Integer.MAX_VALUE
+                    ? ToastRecord.DURATION_INDEFINITE : remainingMs;
+            record.setState(ToastRecord.STATE_QUEUED);
+            mQueue.offerFirst(record);
+            trimQueue();
+        } else if (remainingMs >= 0) {
+            // Dismissed for good while it was being preempted, the Display only hid it so far
+            mDisplay.dismiss(record, record.getDismissEvent());
+        }
+        showNext();
+    }
+
+    private void showNext() {
+        ToastRecord next;
+        while (mCurrent == null && (next = mQueue.poll()) != null) {
+            if (!next.compareAndSetState(ToastRecord.STATE_QUEUED, ToastRecord.STATE_SHOWING)) {
+                continue;
+            }
+            mCurrent = next;
+            if (mListener != null) {
+                mListener.onShow(next, mQueue.size());
+            }
+            if (mDisplay.show(next)) {
+                return;
+            }
+            // The toast doesn't exist any more, skip it
+            next.setState(ToastRecord.STATE_DISMISSED);
+            mCurrent = null;
+        }
+    }
+
+    private void scheduleTimeout(ToastRecord record) {
+        mScheduler.cancel(mTimeoutTask);
+        final int timeLeftMs = getTimeLeftMs(record);
+        if (timeLeftMs == ToastRecord.DURATION_INDEFINITE) {
+            // If we're set to indefinite, we don't want to set a timeout
+            return;
+        }
+        mScheduler.schedule(mTimeoutTask, timeLeftMs);
+    }
+
+    /**
+     * The duration of {@code record}, or what it had left when it was preempted.
+     */
+    private static int getTimeLeftMs(ToastRecord record) {
+        return record.mRemainingMs != ToastRecord.NOT_PREEMPTED
+                ? record.mRemainingMs : record.getDurationMs();
+    }
+}
@@ -0,0 +1,90 @@
+package com.janedler.core;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+ * {@link Clock} and {@link Scheduler} running on virtual time, for tests and simulations: time
+ * only moves in {@link #advanceTo(long)} and {@link #runUntilIdle()}, which run every task that
+ * falls due in time order, so minutes of toasts replay in milliseconds.
+ * <p>
+ * Not thread-safe.
+ */
+public class VirtualClock implements Clock, Scheduler {
+
+    private static final class Task implements Comparable<Task> {
+        final long time;
+        final long seq;
+        final Runnable runnable;
+
+        Task(long time, long seq, Runnable runnable) {
+            this.time = time;
+            this.seq = seq;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (time != other.time) {
+                return time < other.time ? -1 : 1;
+            }
+            // Tasks due at the same time run in the order they were scheduled
+            return seq < other.seq ? -1 : (seq == other.seq ? 0 : 1);
+        }
+    }
+
+    private final PriorityQueue<Task> mTasks = new PriorityQueue<>();
+    private long mNow;
+    private long mSeq;
+
+    @Override
+    public long uptimeMillis() {
+        return mNow;
+    }
+
+    @Override
+    public void schedule(Runnable task, long delayMillis) {
+        mTasks.add(new Task(mNow + Math.max(0, delayMillis), mSeq++, task));
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        for (Iterator<Task> it = mTasks.iterator(); it.hasNext(); ) {
+            if (it.next().runnable == task) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Run every task due up to {@code time}, then move the clock to {@code time}.
+     */
+    public void advanceTo(long time) {
+        Task task;
+        while ((task = mTasks.peek()) != null && task.time <= time) {
+            mTasks.poll();
+            mNow = Math.max(mNow, task.time);
+            task.runnable.run();
+        }
+        mNow = Math.max(mNow, time);
+    }
+
+    public void advanceBy(long millis) {
+        advanceTo(mNow + millis);
+    }
+
+    /**
+     * Run tasks until none are left, moving the clock to each one.
+     */
+    public void runUntilIdle() {
+        Task task;
+        while ((task = mTasks.poll()) != null) {
+            mNow = Math.max(mNow, task.time);
+            task.runnable.run();
+        }
+    }
+
+    public int getPendingTaskCount() {
+        return mTasks.size();
+    }
+}
@@ -0,0 +1,105 @@
+package com.janedler.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Toast arrivals for {@link ToastSimulator}: synthetic patterns, or a recorded trace with one
+ * {@code <time ms> <duration ms> [priority]} line per toast ({@code #} starts a comment).
+ */
+final class ArrivalTrace {
+
+    static final class Arrival {
+        final long timeMs;
+        final int durationMs;
+        final int priority;
+
+        Arrival(long timeMs, int durationMs, int priority) {
+            this.timeMs = timeMs;
+            this.durationMs = durationMs;
+            this.priority = priority;
+        }
+    }
+
+    private final List<Arrival> mArrivals = new ArrayList<>();
+
+    List<Arrival> arrivals() {
+        Collections.sort(mArrivals, new Comparator<Arrival>() {
+            @Override
+            public int compare(Arrival a, Arrival b) {
+                return a.timeMs < b.timeMs ? -1 : (a.timeMs == b.timeMs ? 0 : 1);
+            }
+        });
+        return mArrivals;
+    }
+
+    ArrivalTrace add(long timeMs, int durationMs, int priority) {
+        mArrivals.add(new Arrival(timeMs, durationMs, priority));
+        return this;
+    }
+
+    /**
+     * {@code count} toasts {@code spacingMs} apart, starting at {@code startMs}.
+     */
+    ArrivalTrace burst(long startMs, int count, long spacingMs, int durationMs) {
+        for (int i = 0; i < count; i++) {
+            add(startMs + i * spacingMs, durationMs, 0);
+        }
+        return this;
+    }
+
+    /**
+     * Independent arrivals at {@code perSecond} on average, for {@code lengthMs}.
+     */
+    ArrivalTrace poisson(long seed, double perSecond, long lengthMs, int durationMs) {
+        final Random random = new Random(seed);
+        double time = 0;
+        while (true) {
+            time += -Math.log(1 - random.nextDouble()) * 1000d / perSecond;
+            if (time >= lengthMs) {
+                return this;
+            }
+            add((long) time, durationMs, 0);
+        }
+    }
+
+    /**
+     * A user hammering a button: {@code clicks} taps roughly {@code intervalMs} apart, jittered
+     * by up to half the interval either way.
+     */
+    ArrivalTrace spamClicks(long seed, long startMs, int clicks, long intervalMs, int durationMs) {
+        final Random random = new Random(seed);
+        long time = startMs;
+        for (int i = 0; i < clicks; i++) {
+            add(time, durationMs, 0);
+            time += intervalMs / 2 + (long) (random.nextDouble() * intervalMs);
+        }
+        return this;
+    }
+
+    static ArrivalTrace parse(Reader reader) throws IOException {
+        final ArrivalTrace trace = new ArrivalTrace();
+        final BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            final int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            final String[] fields = line.split("\\s+");
+            trace.add(Long.parseLong(fields[0]), Integer.parseInt(fields[1]),
+                    fields.length > 2 ? Integer.parseInt(fields[2]) : 0);
+        }
+        return trace;
+    }
+}
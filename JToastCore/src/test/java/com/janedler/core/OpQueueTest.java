@@ -0,0 +1,98 @@
+package com.janedler.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the order in which {@link OpQueue} applies operations, and that deferred posts stop
+ * allocating once the node pool is warm.
+ */
+public class OpQueueTest {
+
+    private boolean mOnOwnerThread;
+    private int mDrainRequests;
+    private List<Integer> mApplied;
+    private OpQueue mOps;
+
+    @Before
+    public void setUp() {
+        mApplied = new ArrayList<>();
+        mOps = new OpQueue(new OpQueue.Target() {
+            @Override
+            public void apply(int op, Object subject, Object extra, int arg) {
+                mApplied.add(arg);
+                if (op == 1) {
+                    // Posted while applying, behind everything posted before it
+                    mOps.post(0, null, arg + 100);
+                }
+            }
+        }, new OpQueue.Owner() {
+            @Override
+            public boolean isOwnerThread() {
+                return mOnOwnerThread;
+            }
+
+            @Override
+            public void requestDrain() {
+                mDrainRequests++;
+            }
+        });
+    }
+
+    @Test
+    public void appliesInPostingOrder() {
+        mOps.postDeferred(0, null, 1);
+        mOps.postDeferred(1, null, 2);
+        mOps.postDeferred(0, null, 3);
+        assertEquals(1, mDrainRequests);
+
+        mOnOwnerThread = true;
+        mOps.drain();
+        assertEquals(Arrays.asList(1, 2, 3, 102), mApplied);
+    }
+
+    @Test
+    public void postOnTheOwnerThreadGoesAfterPendingOps() {
+        mOps.postDeferred(0, null, 1);
+        mOnOwnerThread = true;
+        mOps.post(0, null, 2);
+        assertEquals(Arrays.asList(1, 2), mApplied);
+    }
+
+    @Test
+    public void deferredPostsAllocateNothingAfterWarmUp() {
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        mOnOwnerThread = true;
+        final Integer subject = 7;
+        for (int i = 0; i < 20000; i++) {
+            mOps.postDeferred(2, subject, 0);
+            mOps.postDeferred(2, subject, 0);
+            mOps.drain();
+            mApplied.clear();
+        }
+        mApplied = new ArrayList<>(4);
+
+        // Whatever reading the counter allocates by itself
+        final long start = threads.getThreadAllocatedBytes(threadId);
+        final long overhead = threads.getThreadAllocatedBytes(threadId) - start;
+        final long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 10000; i++) {
+            mOps.postDeferred(2, subject, 0);
+            mOps.postDeferred(2, subject, 0);
+            mOps.drain();
+            mApplied.clear();
+        }
+        final long allocated = threads.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        assertEquals(0L, allocated);
+    }
+}
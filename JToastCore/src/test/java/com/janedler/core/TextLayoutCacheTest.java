@@ -0,0 +1,72 @@
+package com.janedler.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks what {@link TextLayoutCache} considers the same text.
+ */
+public class TextLayoutCacheTest {
+
+    @Test
+    public void plainTextMatchesByCharactersSizeAndWidth() {
+        final TextLayoutCache<String> cache = new TextLayoutCache<>(4);
+        cache.put("hello", 14f, 300, cache.getGeneration(), "layout");
+
+        assertEquals("layout", cache.get(new String("hello"), 14f, 300));
+        assertEquals("layout", cache.get(new StringBuilder("hello").toString(), 14f, 300));
+        assertNull(cache.get("hello", 16f, 300));
+        assertNull(cache.get("hello", 14f, 200));
+    }
+
+    @Test
+    public void styledTextOnlyMatchesItself() {
+        final TextLayoutCache<String> cache = new TextLayoutCache<>(4);
+        final StringBuilder styled = new StringBuilder("hello");
+        cache.put(styled, 14f, 300, cache.getGeneration(), "styled");
+
+        assertEquals("styled", cache.get(styled, 14f, 300));
+        assertNull(cache.get(new StringBuilder("hello"), 14f, 300));
+        assertNull(cache.get("hello", 14f, 300));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        final TextLayoutCache<String> cache = new TextLayoutCache<>(2);
+        final int generation = cache.getGeneration();
+        cache.put("a", 14f, 300, generation, "a");
+        cache.put("b", 14f, 300, generation, "b");
+        cache.get("a", 14f, 300);
+        cache.put("c", 14f, 300, generation, "c");
+
+        assertEquals("a", cache.get("a", 14f, 300));
+        assertNull(cache.get("b", 14f, 300));
+        assertEquals("c", cache.get("c", 14f, 300));
+    }
+
+    @Test
+    public void layoutsStartedBeforeClearAreDropped() {
+        final TextLayoutCache<String> cache = new TextLayoutCache<>(4);
+        final int generation = cache.getGeneration();
+        cache.clear();
+        cache.put("hello", 14f, 300, generation, "stale");
+
+        assertNull(cache.get("hello", 14f, 300));
+    }
+
+    @Test
+    public void precomputesLongOrStyledText() {
+        final StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < TextLayoutCache.MIN_PRECOMPUTE_LENGTH; i++) {
+            longText.append('x');
+        }
+        assertFalse(TextLayoutCache.shouldPrecompute(null));
+        assertFalse(TextLayoutCache.shouldPrecompute("short"));
+        assertTrue(TextLayoutCache.shouldPrecompute(longText.toString()));
+        assertTrue(TextLayoutCache.shouldPrecompute(new StringBuilder("short")));
+    }
+}
@@ -0,0 +1,145 @@
+package com.janedler.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that {@link ToastLanes} keep their queues apart, on a {@link VirtualClock}.
+ */
+public class ToastLanesTest {
+
+    private VirtualClock mClock;
+    private ToastLanes mLanes;
+    /**
+     * Keys of the lanes whose toast is on screen right now.
+     */
+    private List<Object> mVisible;
+    /**
+     * Keys of the lanes which have been dropped.
+     */
+    private List<Object> mEvicted;
+
+    @Before
+    public void setUp() {
+        mClock = new VirtualClock();
+        mVisible = new ArrayList<>();
+        mEvicted = new ArrayList<>();
+        mLanes = new ToastLanes(new ToastLanes.Factory() {
+            @Override
+            public ToastScheduler create(final Object key) {
+                final ToastScheduler[] lane = new ToastScheduler[1];
+                lane[0] = new ToastScheduler(mClock, mClock, new ToastScheduler.Display() {
+                    @Override
+                    public boolean show(ToastRecord record) {
+                        mVisible.add(key);
+                        lane[0].onShown(record);
+                        return true;
+                    }
+
+                    @Override
+                    public boolean dismiss(ToastRecord record, int event) {
+                        if (record == lane[0].getCurrent()) {
+                            mVisible.remove(key);
+                        }
+                        return false;
+                    }
+                });
+                return lane[0];
+            }
+
+            @Override
+            public void onEvicted(Object key, ToastScheduler lane) {
+                mEvicted.add(key);
+            }
+        });
+    }
+
+    private static ToastRecord record(int durationMs) {
+        final ToastRecord record = new ToastRecord();
+        record.setDurationMs(durationMs);
+        return record;
+    }
+
+    @Test
+    public void lanesShowAtTheSameTime() {
+        for (int i = 0; i < 10; i++) {
+            mLanes.get("sync").enqueue(record(2000));
+        }
+        final ToastRecord error = record(3500);
+        mLanes.get("error").enqueue(error);
+
+        // The error doesn't wait behind the burst
+        assertSame(error, mLanes.get("error").getCurrent());
+        assertEquals(2, mVisible.size());
+        assertEquals(8, mLanes.getQueueDepth());
+
+        mClock.advanceBy(3500);
+        assertNull(mLanes.get("error").getCurrent());
+        assertEquals(1, mVisible.size());
+    }
+
+    @Test
+    public void settingsApplyToExistingAndNewLanes() {
+        final ToastScheduler early = mLanes.get(null);
+        // Busy, so that creating the other lane doesn't drop it
+        early.enqueue(record(ToastRecord.DURATION_INDEFINITE));
+        mLanes.setCapacity(2);
+        mLanes.setOverflowPolicy(ToastScheduler.OVERFLOW_DROP_NEWEST);
+        mLanes.setLaneCapacity("chatty", 5);
+        final ToastScheduler chatty = mLanes.get("chatty");
+
+        assertEquals(2, early.getCapacity());
+        assertEquals(ToastScheduler.OVERFLOW_DROP_NEWEST, early.getOverflowPolicy());
+        assertEquals(5, chatty.getCapacity());
+        assertEquals(ToastScheduler.OVERFLOW_DROP_NEWEST, chatty.getOverflowPolicy());
+
+        // The lane keeps its own capacity when the shared one changes, until it's reset
+        mLanes.setCapacity(3);
+        assertEquals(5, chatty.getCapacity());
+        mLanes.setLaneCapacity("chatty", 0);
+        assertEquals(3, chatty.getCapacity());
+        assertEquals(2, mLanes.getLaneCount());
+    }
+
+    @Test
+    public void fullLaneOnlyRejectsItsOwnToasts() {
+        mLanes.setCapacity(1);
+        mLanes.setOverflowPolicy(ToastScheduler.OVERFLOW_DROP_NEWEST);
+        final ToastScheduler bottom = mLanes.get(80);
+        bottom.enqueue(record(2000));
+        bottom.enqueue(record(2000));
+        assertEquals(ToastScheduler.RESULT_REJECTED, bottom.enqueue(record(2000)));
+
+        assertEquals(ToastScheduler.RESULT_QUEUED, mLanes.get(48).enqueue(record(2000)));
+        assertEquals(ToastScheduler.RESULT_QUEUED, mLanes.get(48).enqueue(record(2000)));
+    }
+
+    @Test
+    public void idleLanesAreDroppedWhenANewLaneIsCreated() {
+        final ToastScheduler done = mLanes.get("done");
+        done.enqueue(record(1000));
+        final ToastScheduler busy = mLanes.get("busy");
+        busy.enqueue(record(5000));
+        mClock.advanceBy(1000);
+
+        // Still reused while it is the only lane asked for
+        assertSame(done, mLanes.get("done"));
+        assertEquals(2, mLanes.getLaneCount());
+
+        mLanes.get("new");
+        assertEquals(1, mEvicted.size());
+        assertEquals("done", mEvicted.get(0));
+        assertEquals(2, mLanes.getLaneCount());
+        assertSame(busy, mLanes.get("busy"));
+        // A new lane for the dropped key
+        assertNotSame(done, mLanes.get("done"));
+    }
+}
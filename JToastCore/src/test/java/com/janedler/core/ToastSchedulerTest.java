@@ -0,0 +1,427 @@
+package com.janedler.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives {@link ToastScheduler} with a hand-advanced clock, so timeouts are exact and the tests
+ * never sleep.
+ */
+public class ToastSchedulerTest {
+
+    /**
+     * Clock and scheduler whose time only moves in {@link #advance(long)}.
+     */
+    private static class ManualScheduler implements Clock, Scheduler {
+        long now;
+        Runnable task;
+        long due;
+
+        @Override
+        public long uptimeMillis() {
+            return now;
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            this.task = task;
+            this.due = now + delayMillis;
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            if (this.task == task) {
+                this.task = null;
+            }
+        }
+
+        void advance(long millis) {
+            now += millis;
+            if (task != null && due <= now) {
+                final Runnable run = task;
+                task = null;
+                run.run();
+            }
+        }
+    }
+
+    /**
+     * Shows and hides instantly and logs what it was asked to do.
+     */
+    private class RecordingDisplay implements ToastScheduler.Display {
+        final List<String> log = new ArrayList<>();
+
+        @Override
+        public boolean show(ToastRecord record) {
+            log.add("show " + record.getPriority());
+            mScheduler.onShown(record);
+            return true;
+        }
+
+        @Override
+        public boolean dismiss(ToastRecord record, int event) {
+            log.add("dismiss " + record.getPriority() + " " + event);
+            return false;
+        }
+    }
+
+    private ManualScheduler mTime;
+    private RecordingDisplay mDisplay;
+    private ToastScheduler mScheduler;
+
+    private static ToastRecord record(int id, int durationMs) {
+        final ToastRecord record = new ToastRecord();
+        // The priority doubles as an id in the display log
+        record.setPriority(id);
+        record.setDurationMs(durationMs);
+        return record;
+    }
+
+    @Before
+    public void setUp() {
+        mTime = new ManualScheduler();
+        mDisplay = new RecordingDisplay();
+        mScheduler = new ToastScheduler(mTime, mTime, mDisplay);
+    }
+
+    @Test
+    public void showsInOrderAndTimesOutAfterTheDuration() {
+        final ToastRecord first = record(1, 1500);
+        final ToastRecord second = record(2, 2750);
+        assertEquals(ToastScheduler.RESULT_QUEUED, mScheduler.enqueue(first));
+        assertEquals(ToastScheduler.RESULT_QUEUED, mScheduler.enqueue(second));
+        assertSame(first, mScheduler.getCurrent());
+        assertEquals(1, mScheduler.getQueueDepth());
+
+        mTime.advance(1499);
+        assertSame(first, mScheduler.getCurrent());
+        mTime.advance(1);
+        assertSame(second, mScheduler.getCurrent());
+        assertEquals(ToastRecord.STATE_DISMISSED, first.getState());
+        assertEquals(ToastScheduler.EVENT_TIMEOUT, first.getDismissEvent());
+
+        mTime.advance(2750);
+        assertNull(mScheduler.getCurrent());
+        assertEquals(1500, second.getShownTime());
+    }
+
+    @Test
+    public void indefiniteToastStaysUntilDismissed() {
+        final ToastRecord record = record(1, ToastRecord.DURATION_INDEFINITE);
+        mScheduler.enqueue(record);
+        mTime.advance(60000);
+        assertSame(record, mScheduler.getCurrent());
+
+        assertTrue(mScheduler.dismiss(record, ToastScheduler.EVENT_MANUAL));
+        assertNull(mScheduler.getCurrent());
+        assertFalse(mScheduler.dismiss(record, ToastScheduler.EVENT_MANUAL));
+    }
+
+    @Test
+    public void reEnqueueingTheCurrentToastRestartsItsTimeout() {
+        final ToastRecord record = record(1, 1000);
+        mScheduler.enqueue(record);
+        mTime.advance(900);
+        assertEquals(ToastScheduler.RESULT_UPDATED, mScheduler.enqueue(record));
+        mTime.advance(900);
+        assertSame(record, mScheduler.getCurrent());
+        mTime.advance(100);
+        assertNull(mScheduler.getCurrent());
+    }
+
+    @Test
+    public void pausedTimeoutDoesNotFire() {
+        final ToastRecord record = record(1, 1000);
+        mScheduler.enqueue(record);
+        mScheduler.pauseTimeout(record);
+        mTime.advance(5000);
+        assertSame(record, mScheduler.getCurrent());
+        mScheduler.resumeTimeout(record);
+        mTime.advance(1000);
+        assertNull(mScheduler.getCurrent());
+    }
+
+    @Test
+    public void dropOldestKeepsTheNewestRecords() {
+        mScheduler.setCapacity(2);
+        mScheduler.enqueue(record(0, 1000));
+        final ToastRecord oldest = record(1, 1000);
+        mScheduler.enqueue(oldest);
+        mScheduler.enqueue(record(2, 1000));
+        mScheduler.enqueue(record(3, 1000));
+
+        assertEquals(2, mScheduler.getQueueDepth());
+        assertEquals(ToastRecord.STATE_DISMISSED, oldest.getState());
+        assertTrue(mDisplay.log.contains("dismiss 1 " + ToastScheduler.EVENT_CONSECUTIVE));
+    }
+
+    @Test
+    public void dropOldestReportsANewcomerItDroppedRightAway() {
+        mScheduler.setCapacity(2);
+        mScheduler.enqueue(record(5, 1000));
+        mScheduler.enqueue(record(5, 1000));
+        mScheduler.enqueue(record(5, 1000));
+        final ToastRecord least = record(1, 1000);
+
+        assertEquals(ToastScheduler.RESULT_DROPPED, mScheduler.enqueue(least));
+        assertEquals(ToastRecord.STATE_DISMISSED, least.getState());
+        assertEquals(2, mScheduler.getQueueDepth());
+        assertTrue(mDisplay.log.contains("dismiss 1 " + ToastScheduler.EVENT_CONSECUTIVE));
+    }
+
+    @Test
+    public void dropNewestRejectsWhenFull() {
+        mScheduler.setCapacity(1);
+        mScheduler.setOverflowPolicy(ToastScheduler.OVERFLOW_DROP_NEWEST);
+        mScheduler.enqueue(record(0, 1000));
+        mScheduler.enqueue(record(1, 1000));
+        final ToastRecord rejected = record(2, 1000);
+
+        assertEquals(ToastScheduler.RESULT_REJECTED, mScheduler.enqueue(rejected));
+        assertEquals(ToastRecord.STATE_IDLE, rejected.getState());
+        assertEquals(1, mScheduler.getQueueDepth());
+    }
+
+    @Test
+    public void dropLowestPriorityNeverDropsSomethingMoreImportant() {
+        mScheduler.setCapacity(2);
+        mScheduler.setOverflowPolicy(ToastScheduler.OVERFLOW_DROP_LOWEST_PRIORITY);
+        mScheduler.enqueue(record(0, 1000));
+        final ToastRecord low = record(5, 1000);
+        mScheduler.enqueue(record(9, 1000));
+        mScheduler.enqueue(low);
+
+        assertEquals(ToastScheduler.RESULT_REJECTED, mScheduler.enqueue(record(4, 1000)));
+        assertEquals(ToastScheduler.RESULT_QUEUED, mScheduler.enqueue(record(7, 1000)));
+        assertEquals(ToastRecord.STATE_DISMISSED, low.getState());
+    }
+
+    @Test
+    public void replaceCurrentDismissesTheVisibleToast() {
+        mScheduler.setOverflowPolicy(ToastScheduler.OVERFLOW_REPLACE_CURRENT);
+        final ToastRecord first = record(1, 1000);
+        final ToastRecord second = record(2, 1000);
+        mScheduler.enqueue(first);
+        mScheduler.enqueue(second);
+
+        assertSame(second, mScheduler.getCurrent());
+        assertEquals(ToastScheduler.EVENT_CONSECUTIVE, first.getDismissEvent());
+    }
+
+    @Test
+    public void showsByPriorityAndInOrderWithinAPriority() {
+        mScheduler.enqueue(record(0, 1000));
+        final ToastRecord low = record(1, 1000);
+        final ToastRecord firstHigh = record(5, 1000);
+        final ToastRecord secondHigh = record(5, 1000);
+        mScheduler.enqueue(low);
+        mScheduler.enqueue(firstHigh);
+        mScheduler.enqueue(record(3, 1000));
+        mScheduler.enqueue(secondHigh);
+
+        mTime.advance(1000);
+        assertSame(firstHigh, mScheduler.getCurrent());
+        mTime.advance(1000);
+        assertSame(secondHigh, mScheduler.getCurrent());
+        mTime.advance(1000);
+        assertEquals(3, mScheduler.getCurrent().getPriority());
+        mTime.advance(1000);
+        assertSame(low, mScheduler.getCurrent());
+    }
+
+    @Test
+    public void preemptedToastResumesWithItsRemainingTime() {
+        mScheduler.setPreemptionPriority(9);
+        final ToastRecord normal = record(1, 3000);
+        mScheduler.enqueue(normal);
+        mScheduler.enqueue(record(1, 1000));
+        mTime.advance(1000);
+
+        // Not important enough to preempt
+        mScheduler.enqueue(record(5, 1000));
+        assertSame(normal, mScheduler.getCurrent());
+
+        final ToastRecord critical = record(9, 500);
+        mScheduler.enqueue(critical);
+        assertSame(critical, mScheduler.getCurrent());
+        assertEquals(ToastRecord.STATE_QUEUED, normal.getState());
+        assertTrue(mDisplay.log.contains("dismiss 1 " + ToastScheduler.EVENT_PREEMPTED));
+
+        mTime.advance(500);
+        assertEquals(5, mScheduler.getCurrent().getPriority());
+        mTime.advance(1000);
+        // Back ahead of the toast which waited behind it, for the 2s it had left
+        assertSame(normal, mScheduler.getCurrent());
+        mTime.advance(1999);
+        assertSame(normal, mScheduler.getCurrent());
+        mTime.advance(1);
+        assertEquals(ToastScheduler.EVENT_TIMEOUT, normal.getDismissEvent());
+        assertEquals(1, mScheduler.getCurrent().getPriority());
+    }
+
+    @Test
+    public void preemptionDoesNotShortenTheDuration() {
+        mScheduler.setPreemptionPriority(9);
+        final ToastRecord normal = record(1, 3000);
+        mScheduler.enqueue(normal);
+        mTime.advance(1000);
+        mScheduler.enqueue(record(9, 500));
+        assertEquals(3000, normal.getDurationMs());
+
+        // Enqueued again by the caller while it waits with 2s left
+        mScheduler.enqueue(normal);
+        mTime.advance(500);
+        assertSame(normal, mScheduler.getCurrent());
+        mTime.advance(2999);
+        assertSame(normal, mScheduler.getCurrent());
+        mTime.advance(1);
+        assertEquals(ToastScheduler.EVENT_TIMEOUT, normal.getDismissEvent());
+    }
+
+    @Test
+    public void skipsRecordsTheDisplayCannotShow() {
+        final ToastScheduler scheduler = new ToastScheduler(mTime, mTime,
+                new ToastScheduler.Display() {
+                    @Override
+                    public boolean show(ToastRecord record) {
+                        return record.getPriority() != 1;
+                    }
+
+                    @Override
+                    public boolean dismiss(ToastRecord record, int event) {
+                        return false;
+                    }
+                });
+        final ToastRecord gone = record(1, 1000);
+        final ToastRecord next = record(2, 1000);
+        scheduler.enqueue(gone);
+        assertNull(scheduler.getCurrent());
+        scheduler.enqueue(next);
+        assertSame(next, scheduler.getCurrent());
+        assertEquals(ToastRecord.STATE_DISMISSED, gone.getState());
+    }
+
+    /**
+     * Summarises every collapsed record as one record with the sum of their ids as its id.
+     */
+    private static class SummingAggregator implements ToastScheduler.Aggregator {
+        final List<Integer> collapsedCounts = new ArrayList<>();
+
+        @Override
+        public ToastRecord aggregate(List<ToastRecord> collapsed) {
+            int sum = 0;
+            for (ToastRecord record : collapsed) {
+                assertEquals(ToastRecord.STATE_QUEUED, record.getState());
+                sum += record.getPriority();
+            }
+            collapsedCounts.add(collapsed.size());
+            return record(sum, 1000);
+        }
+    }
+
+    @Test
+    public void aggregatesTheQueueOnceItIsDeepEnough() {
+        final SummingAggregator aggregator = new SummingAggregator();
+        mScheduler.setAggregation(aggregator, 3, 0);
+        final ToastRecord current = record(100, 1000);
+        mScheduler.enqueue(current);
+        final ToastRecord[] burst = {record(1, 1000), record(2, 1000), record(4, 1000)};
+        for (ToastRecord record : burst) {
+            assertEquals(ToastScheduler.RESULT_QUEUED, mScheduler.enqueue(record));
+        }
+
+        assertEquals(1, mScheduler.getQueueDepth());
+        assertEquals(1, aggregator.collapsedCounts.size());
+        for (ToastRecord record : burst) {
+            assertEquals(ToastRecord.STATE_DISMISSED, record.getState());
+            assertEquals(ToastScheduler.EVENT_AGGREGATED, record.getDismissEvent());
+        }
+        // The whole burst takes the screen time of one toast
+        mTime.advance(1000);
+        assertEquals(7, mScheduler.getCurrent().getPriority());
+        mTime.advance(1000);
+        assertNull(mScheduler.getCurrent());
+    }
+
+    @Test
+    public void aggregatesFastArrivalsBeforeTheQueueFills() {
+        final SummingAggregator aggregator = new SummingAggregator();
+        // The queue never gets deep enough, only the arrival rate can trigger aggregation
+        mScheduler.setCapacity(3);
+        mScheduler.setAggregation(aggregator, 4, 500);
+        mScheduler.enqueue(record(100, 10000));
+        for (int id = 1; id < 8; id *= 2) {
+            mScheduler.enqueue(record(id, 1000));
+            mTime.advance(1000);
+        }
+        mScheduler.enqueue(record(8, 1000));
+        mTime.advance(100);
+        mScheduler.enqueue(record(16, 1000));
+        mScheduler.enqueue(record(32, 1000));
+        assertTrue(aggregator.collapsedCounts.isEmpty());
+
+        // Four arrivals within 500ms
+        mScheduler.enqueue(record(64, 1000));
+        assertEquals(1, aggregator.collapsedCounts.size());
+        assertEquals(3, (int) aggregator.collapsedCounts.get(0));
+        assertEquals(1, mScheduler.getQueueDepth());
+    }
+
+    @Test
+    public void aggregatorDoesNotSeeTheCollapsedRecordsInTheQueue() {
+        final ToastRecord late = record(50, 1000);
+        mScheduler.setAggregation(new ToastScheduler.Aggregator() {
+            @Override
+            public ToastRecord aggregate(List<ToastRecord> collapsed) {
+                assertEquals(0, mScheduler.getQueueDepth());
+                // Enqueued while aggregating, it is neither collapsed nor aggregated again
+                mScheduler.enqueue(late);
+                assertEquals(1, mScheduler.getQueueDepth());
+                return record(7, 1000);
+            }
+        }, 3, 0);
+        mScheduler.enqueue(record(100, 1000));
+        final ToastRecord[] burst = {record(1, 1000), record(2, 1000), record(4, 1000)};
+        for (ToastRecord record : burst) {
+            mScheduler.enqueue(record);
+        }
+
+        assertEquals(2, mScheduler.getQueueDepth());
+        assertEquals(ToastRecord.STATE_QUEUED, late.getState());
+        for (ToastRecord record : burst) {
+            assertEquals(ToastScheduler.EVENT_AGGREGATED, record.getDismissEvent());
+        }
+    }
+
+    @Test
+    public void declinedAggregationLeavesTheQueueInOrder() {
+        mScheduler.setAggregation(new ToastScheduler.Aggregator() {
+            @Override
+            public ToastRecord aggregate(List<ToastRecord> collapsed) {
+                return null;
+            }
+        }, 3, 0);
+        mScheduler.enqueue(record(1, 1000));
+        mScheduler.enqueue(record(2, 1000));
+        mScheduler.enqueue(record(2, 1000));
+        mScheduler.enqueue(record(3, 1000));
+        assertEquals(3, mScheduler.getQueueDepth());
+
+        mDisplay.log.clear();
+        mTime.advance(1000);
+        mTime.advance(1000);
+        mTime.advance(1000);
+        assertEquals("show 3", mDisplay.log.get(1));
+        assertEquals("show 2", mDisplay.log.get(3));
+        assertEquals("show 2", mDisplay.log.get(5));
+    }
+}
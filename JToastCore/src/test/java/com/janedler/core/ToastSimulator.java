@@ -0,0 +1,160 @@
+package com.janedler.core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Discrete-event simulation of {@link ToastScheduler} on a {@link VirtualClock}: replays an
+ * {@link ArrivalTrace} against a queue configuration, with enter and exit animations taking
+ * virtual time like they do on screen, and reports how long toasts waited.
+ */
+final class ToastSimulator {
+
+    static final long ENTER_ANIMATION_MS = 250;
+    static final long EXIT_ANIMATION_MS = 180;
+
+    /**
+     * Outcome of one run. Wait is the time from enqueue until the toast was fully shown; toasts
+     * which never were count as superseded (cut off during their enter animation), dropped from
+     * the queue or rejected by it.
+     */
+    static final class Report {
+        String name;
+        int arrivals;
+        int shown;
+        int superseded;
+        int dropped;
+        int rejected;
+        long waitP50;
+        long waitP95;
+        long waitP99;
+        long waitMax;
+        long visibleMs;
+        long spanMs;
+
+        /**
+         * Fraction of the run during which a toast was fully on screen.
+         */
+        double utilisation() {
+            return spanMs == 0 ? 0 : (double) visibleMs / spanMs;
+        }
+
+        static String header() {
+            return String.format(Locale.US, "%-32s %6s %6s %6s %6s %6s %8s %8s %8s %8s %6s",
+                    "scenario", "toasts", "shown", "cut", "drop", "reject",
+                    "p50 s", "p95 s", "p99 s", "max s", "util");
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%-32s %6d %6d %6d %6d %6d %8.2f %8.2f %8.2f %8.2f %5.0f%%",
+                    name, arrivals, shown, superseded, dropped, rejected, waitP50 / 1000d,
+                    waitP95 / 1000d, waitP99 / 1000d, waitMax / 1000d, utilisation() * 100);
+        }
+    }
+
+    private final VirtualClock mClock = new VirtualClock();
+    private final ToastScheduler mScheduler;
+
+    private long[] mWaits;
+    private int mShown;
+    private int mSuperseded;
+    private int mDropped;
+    private long mVisibleMs;
+
+    private final ToastScheduler.Display mDisplay = new ToastScheduler.Display() {
+        @Override
+        public boolean show(final ToastRecord record) {
+            mClock.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    mScheduler.onShown(record);
+                }
+            }, ENTER_ANIMATION_MS);
+            return true;
+        }
+
+        @Override
+        public boolean dismiss(final ToastRecord record, int event) {
+            if (record != mScheduler.getCurrent()) {
+                mDropped++;
+                return false;
+            }
+            if (record.getShownTime() > 0) {
+                mVisibleMs += mClock.uptimeMillis() - record.getShownTime();
+            } else {
+                // Replaced while its enter animation was still running
+                mSuperseded++;
+            }
+            mClock.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    mScheduler.onDismissed(record);
+                }
+            }, EXIT_ANIMATION_MS);
+            return true;
+        }
+    };
+
+    private final ToastScheduler.Listener mListener = new ToastScheduler.Listener() {
+        @Override
+        public void onShown(ToastRecord record) {
+            mWaits[mShown++] = record.getShownTime() - record.getEnqueueTime();
+        }
+    };
+
+    ToastSimulator(int overflowPolicy, int capacity) {
+        mScheduler = new ToastScheduler(mClock, mClock, mDisplay);
+        mScheduler.setOverflowPolicy(overflowPolicy);
+        mScheduler.setCapacity(capacity);
+        mScheduler.setListener(mListener);
+    }
+
+    Report run(String name, ArrivalTrace trace) {
+        final List<ArrivalTrace.Arrival> arrivals = trace.arrivals();
+        mWaits = new long[arrivals.size()];
+        final long start = arrivals.isEmpty() ? 0 : arrivals.get(0).timeMs;
+        mClock.advanceTo(start);
+        int rejected = 0;
+        for (ArrivalTrace.Arrival arrival : arrivals) {
+            mClock.advanceTo(arrival.timeMs);
+            final ToastRecord record = new ToastRecord();
+            record.setDurationMs(arrival.durationMs);
+            record.setPriority(arrival.priority);
+            if (mScheduler.enqueue(record) == ToastScheduler.RESULT_REJECTED) {
+                rejected++;
+            }
+        }
+        mClock.runUntilIdle();
+
+        final Report report = new Report();
+        report.name = name;
+        report.arrivals = arrivals.size();
+        report.shown = mShown;
+        report.superseded = mSuperseded;
+        report.dropped = mDropped;
+        report.rejected = rejected;
+        report.visibleMs = mVisibleMs;
+        report.spanMs = mClock.uptimeMillis() - start;
+        final long[] waits = Arrays.copyOf(mWaits, mShown);
+        Arrays.sort(waits);
+        report.waitP50 = percentile(waits, 50);
+        report.waitP95 = percentile(waits, 95);
+        report.waitP99 = percentile(waits, 99);
+        report.waitMax = waits.length == 0 ? 0 : waits[waits.length - 1];
+        return report;
+    }
+
+    /**
+     * Nearest-rank percentile of sorted values.
+     */
+    static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        final int rank = (int) Math.ceil(sorted.length * percentile / 100d);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
@@ -0,0 +1,63 @@
+package com.janedler.core;
+
+/**
+ * Prints the wait percentiles of every overflow policy for the arrival patterns of
+ * {@link ToastSimulatorTest}, so queue changes can be compared before they ship. Run it with
+ * {@code ./gradlew :JToastCore:simulate}; the unit tests only assert on the numbers.
+ */
+public final class ToastSimulatorReport {
+
+    static final int SHORT_MS = 2000;
+    static final int LONG_MS = 3500;
+
+    static final int[] POLICIES = {
+            ToastScheduler.OVERFLOW_DROP_OLDEST,
+            ToastScheduler.OVERFLOW_DROP_NEWEST,
+            ToastScheduler.OVERFLOW_REPLACE_CURRENT,
+            ToastScheduler.OVERFLOW_DROP_LOWEST_PRIORITY,
+    };
+    static final String[] POLICY_NAMES = {"oldest", "newest", "replace", "priority"};
+
+    private ToastSimulatorReport() {
+    }
+
+    /**
+     * 40 long toasts from someone hammering a button for 12 seconds.
+     */
+    static ArrivalTrace spamClicks() {
+        return new ArrivalTrace().spamClicks(7, 0, 40, 300, LONG_MS);
+    }
+
+    /**
+     * Two bursts of 20 short toasts a minute apart.
+     */
+    static ArrivalTrace bursts() {
+        return new ArrivalTrace().burst(0, 20, 50, SHORT_MS).burst(60000, 20, 50, SHORT_MS);
+    }
+
+    /**
+     * Ten minutes of short toasts at 0.3 a second on average.
+     */
+    static ArrivalTrace poisson() {
+        return new ArrivalTrace().poisson(42, 0.3, 600000, SHORT_MS);
+    }
+
+    static ToastSimulator.Report run(String scenario, int policy, int capacity,
+                                     ArrivalTrace trace) {
+        return new ToastSimulator(policy, capacity)
+                .run(scenario + "/" + POLICY_NAMES[policy] + "/" + capacity, trace);
+    }
+
+    public static void main(String[] args) {
+        System.out.println(ToastSimulator.Report.header());
+        System.out.println(run("spam", ToastScheduler.OVERFLOW_DROP_OLDEST, Integer.MAX_VALUE,
+                spamClicks()));
+        for (int policy : POLICIES) {
+            System.out.println(run("spam", policy, 3, spamClicks()));
+        }
+        for (int policy : POLICIES) {
+            System.out.println(run("burst", policy, ToastScheduler.DEFAULT_CAPACITY, bursts()));
+            System.out.println(run("poisson", policy, ToastScheduler.DEFAULT_CAPACITY, poisson()));
+        }
+    }
+}
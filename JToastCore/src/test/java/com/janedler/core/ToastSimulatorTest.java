@@ -0,0 +1,116 @@
+package com.janedler.core;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays arrival patterns against each overflow policy in virtual time and checks the wait
+ * percentiles. Each run covers minutes of toasts and takes milliseconds; the numbers themselves
+ * are printed by {@link ToastSimulatorReport}.
+ */
+public class ToastSimulatorTest {
+
+    private static final int SHORT_MS = ToastSimulatorReport.SHORT_MS;
+    private static final int LONG_MS = ToastSimulatorReport.LONG_MS;
+
+    /**
+     * Upper bound of the time a toast can spend waiting behind {@code ahead} others.
+     */
+    private static long maxWait(int ahead, int durationMs) {
+        return (ahead + 1) * (durationMs + ToastSimulator.ENTER_ANIMATION_MS
+                + ToastSimulator.EXIT_ANIMATION_MS);
+    }
+
+    private static ToastSimulator.Report run(String scenario, int policy, int capacity,
+                                             ArrivalTrace trace) {
+        final ToastSimulator.Report report =
+                ToastSimulatorReport.run(scenario, policy, capacity, trace);
+        // Every toast is either shown or accounted for
+        assertEquals(report.arrivals,
+                report.shown + report.superseded + report.dropped + report.rejected);
+        return report;
+    }
+
+    @Test
+    public void unboundedQueueReproducesLateToasts() {
+        final ToastSimulator.Report report = run("spam", ToastScheduler.OVERFLOW_DROP_OLDEST,
+                Integer.MAX_VALUE, ToastSimulatorReport.spamClicks());
+        assertEquals(0, report.dropped);
+        // 40 long toasts in 12 seconds: the last ones show up more than a minute late
+        assertTrue(report.waitP99 > 60000);
+        assertTrue(report.utilisation() > 0.8);
+    }
+
+    @Test
+    public void boundedQueueKeepsWaitsBounded() {
+        final int capacity = 3;
+        for (int policy : ToastSimulatorReport.POLICIES) {
+            final ToastSimulator.Report report =
+                    run("spam", policy, capacity, ToastSimulatorReport.spamClicks());
+            if (policy == ToastScheduler.OVERFLOW_REPLACE_CURRENT) {
+                // Newer toasts jump the queue, so the latest click shows at once but older
+                // ones can starve for as long as the spam lasts
+                assertTrue(report.waitP50 <= ToastSimulator.ENTER_ANIMATION_MS
+                        + ToastSimulator.EXIT_ANIMATION_MS);
+            } else {
+                assertTrue(report.waitMax <= maxWait(capacity, LONG_MS));
+            }
+            assertTrue(report.superseded + report.dropped + report.rejected > 0);
+        }
+    }
+
+    @Test
+    public void comparesPoliciesAcrossPatterns() {
+        final int capacity = ToastScheduler.DEFAULT_CAPACITY;
+        for (int policy : ToastSimulatorReport.POLICIES) {
+            final ToastSimulator.Report burst =
+                    run("burst", policy, capacity, ToastSimulatorReport.bursts());
+            final ToastSimulator.Report poisson =
+                    run("poisson", policy, capacity, ToastSimulatorReport.poisson());
+            // The bounded queue bounds every wait, whatever the pattern
+            assertTrue(burst.waitMax <= maxWait(capacity, SHORT_MS));
+            assertTrue(poisson.waitP99 <= maxWait(capacity, SHORT_MS));
+            if (policy == ToastScheduler.OVERFLOW_REPLACE_CURRENT) {
+                // The newest toast shows at once and cuts off the one on screen
+                assertTrue(poisson.waitP50 <= ToastSimulator.ENTER_ANIMATION_MS
+                        + ToastSimulator.EXIT_ANIMATION_MS);
+                assertTrue(poisson.superseded > 0);
+            } else {
+                // Steady arrivals never fill the queue, only the bursts do
+                assertEquals(poisson.arrivals, poisson.shown);
+                assertTrue(poisson.waitP50 < poisson.waitP95);
+                assertTrue(burst.dropped + burst.rejected > 0);
+            }
+        }
+    }
+
+    @Test
+    public void sparseArrivalsNeverWait() {
+        final ToastSimulator.Report report = run("sparse", ToastScheduler.OVERFLOW_DROP_OLDEST,
+                ToastScheduler.DEFAULT_CAPACITY, new ArrivalTrace().burst(0, 10, 10000, SHORT_MS));
+        assertEquals(10, report.shown);
+        assertEquals(ToastSimulator.ENTER_ANIMATION_MS, report.waitMax);
+    }
+
+    @Test
+    public void replaysRecordedTrace() throws IOException {
+        final ArrivalTrace trace = ArrivalTrace.parse(new StringReader(""
+                + "# time duration priority\n"
+                + "0     2000\n"
+                + "100   2000\n"
+                + "150   3500 2\n"
+                + "\n"
+                + "9000  2000 # after the queue drained\n"));
+        final ToastSimulator.Report report = run("recorded",
+                ToastScheduler.OVERFLOW_DROP_LOWEST_PRIORITY, 1, trace);
+        assertEquals(4, report.arrivals);
+        // The priority 2 toast displaces the queued priority 0 one
+        assertEquals(3, report.shown);
+        assertEquals(1, report.dropped);
+    }
+}
@@ -0,0 +1,71 @@
+package com.janedler.stress;
+
+import com.janedler.core.OpQueue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The owner of an {@link OpQueue} which drains once per frame: however many producers post, it is
+ * asked to drain once per frame, and every operation of the frame is applied in that one drain.
+ */
+public class FrameBatchingStressTest {
+
+    private static final int THREADS = 8;
+    private static final int OPS_PER_THREAD = 2000;
+    private static final int FRAMES = 4;
+
+    @Test
+    public void producersWakeTheOwnerOncePerFrame() throws Exception {
+        final AtomicInteger drainRequests = new AtomicInteger();
+        final List<int[]> applied = new ArrayList<>();
+        final OpQueue ops = new OpQueue(new OpQueue.Target() {
+            @Override
+            public void apply(int op, Object subject, Object extra, int arg) {
+                applied.add(new int[]{op, arg});
+            }
+        }, new OpQueue.Owner() {
+            @Override
+            public boolean isOwnerThread() {
+                return false;
+            }
+
+            @Override
+            public void requestDrain() {
+                drainRequests.incrementAndGet();
+            }
+        });
+
+        for (int frame = 0; frame < FRAMES; frame++) {
+            final int base = frame * OPS_PER_THREAD;
+            StressRunner.run(THREADS, new StressRunner.Producer() {
+                @Override
+                public void run(int thread) {
+                    for (int i = 0; i < OPS_PER_THREAD; i++) {
+                        ops.postDeferred(thread, null, base + i);
+                    }
+                }
+            });
+            assertEquals(frame + 1, drainRequests.get());
+            // The frame callback
+            ops.drain();
+        }
+
+        assertEquals(FRAMES * THREADS * OPS_PER_THREAD, applied.size());
+        final int[] last = new int[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            last[i] = -1;
+        }
+        for (int[] op : applied) {
+            // Every producer's operations are applied in the order it posted them
+            assertTrue(op[1] > last[op[0]]);
+            last[op[0]] = op[1];
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.janedler.stress;
+
+import com.janedler.core.Clock;
+import com.janedler.core.ToastScheduler;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * V1's threading model: any thread calls into the scheduler while holding one lock, and
+ * timeouts run on the main thread under the same lock.
+ */
+@RunWith(Parameterized.class)
+public class LockedSchedulerStressTest {
+
+    private static final int THREADS = 8;
+    private static final int TOASTS_PER_THREAD = 400;
+
+    @Parameterized.Parameters(name = "policy={0}")
+    public static Collection<Object[]> policies() {
+        return Arrays.asList(new Object[][]{
+                {ToastScheduler.OVERFLOW_DROP_OLDEST},
+                {ToastScheduler.OVERFLOW_DROP_NEWEST},
+                {ToastScheduler.OVERFLOW_REPLACE_CURRENT},
+                {ToastScheduler.OVERFLOW_DROP_LOWEST_PRIORITY},
+        });
+    }
+
+    private final int mPolicy;
+    private final Object mLock = new Object();
+    private final MainThread mMain = new MainThread(mLock);
+    private ToastScheduler mScheduler;
+
+    public LockedSchedulerStressTest(int policy) {
+        mPolicy = policy;
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        mMain.shutdown();
+    }
+
+    @Test
+    public void concurrentEnqueueAndDismiss() throws Exception {
+        final StressDisplay display = new StressDisplay(mMain) {
+            @Override
+            void reportShown(StressRecord record) {
+                synchronized (mLock) {
+                    mScheduler.onShown(record);
+                }
+            }
+
+            @Override
+            void reportDismissed(StressRecord record) {
+                synchronized (mLock) {
+                    mScheduler.onDismissed(record);
+                }
+            }
+        };
+        mScheduler = new ToastScheduler(Clock.SYSTEM, mMain, display);
+        mScheduler.setListener(display.listener);
+        mScheduler.setOverflowPolicy(mPolicy);
+        mScheduler.setCapacity(4);
+
+        final List<List<StressRecord>> records = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            records.add(new ArrayList<StressRecord>(TOASTS_PER_THREAD));
+        }
+        StressRunner.run(THREADS, new StressRunner.Producer() {
+            @Override
+            public void run(int thread) throws Exception {
+                final Random random = new Random(thread);
+                final List<StressRecord> mine = records.get(thread);
+                for (int i = 0; i < TOASTS_PER_THREAD; i++) {
+                    final StressRecord record = new StressRecord(1 + random.nextInt(3),
+                            random.nextInt(4));
+                    mine.add(record);
+                    synchronized (mLock) {
+                        if (mScheduler.enqueue(record) == ToastScheduler.RESULT_REJECTED) {
+                            record.rejects.incrementAndGet();
+                        }
+                    }
+                    if (random.nextInt(4) == 0) {
+                        final StressRecord victim = mine.get(random.nextInt(mine.size()));
+                        synchronized (mLock) {
+                            mScheduler.dismiss(victim, ToastScheduler.EVENT_MANUAL);
+                        }
+                    }
+                    if (random.nextInt(8) == 0) {
+                        Thread.sleep(1);
+                    }
+                }
+            }
+        });
+
+        StressRunner.awaitQuiescence(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return mMain.call(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        synchronized (mLock) {
+                            return mScheduler.getCurrent() == null
+                                    && mScheduler.getQueueDepth() == 0;
+                        }
+                    }
+                });
+            }
+        }, 30000);
+        StressRunner.verify(display, records);
+    }
+}
@@ -0,0 +1,82 @@
+package com.janedler.stress;
+
+import com.janedler.core.Scheduler;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stands in for the main looper: one thread running posted and delayed tasks in order. Given a
+ * lock, delayed tasks run while holding it, like V1's timeout messages.
+ */
+final class MainThread implements Scheduler {
+
+    private volatile Thread mThread;
+    private final ScheduledThreadPoolExecutor mExecutor =
+            new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    mThread = new Thread(runnable, "stress-main");
+                    return mThread;
+                }
+            });
+    private final ConcurrentHashMap<Runnable, ScheduledFuture<?>> mDelayed =
+            new ConcurrentHashMap<>();
+
+    private final Object mLock;
+
+    MainThread(Object lock) {
+        mLock = lock;
+        mExecutor.setRemoveOnCancelPolicy(true);
+        mExecutor.prestartAllCoreThreads();
+    }
+
+    boolean isCurrentThread() {
+        return Thread.currentThread() == mThread;
+    }
+
+    void post(Runnable task) {
+        mExecutor.execute(task);
+    }
+
+    /**
+     * Run {@code task} on the main thread and wait for its result.
+     */
+    <T> T call(Callable<T> task) throws Exception {
+        final Future<T> future = mExecutor.submit(task);
+        return future.get(10, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void schedule(final Runnable task, long delayMillis) {
+        // Like a Handler, the same task may be pending more than once
+        cancel(task);
+        final Runnable run = mLock == null ? task : new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mLock) {
+                    task.run();
+                }
+            }
+        };
+        mDelayed.put(task, mExecutor.schedule(run, delayMillis, TimeUnit.MILLISECONDS));
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        final ScheduledFuture<?> future = mDelayed.remove(task);
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    void shutdown() throws InterruptedException {
+        mExecutor.shutdownNow();
+        mExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+}
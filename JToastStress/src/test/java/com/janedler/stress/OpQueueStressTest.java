@@ -0,0 +1,155 @@
+package com.janedler.stress;
+
+import com.janedler.core.Clock;
+import com.janedler.core.OpQueue;
+import com.janedler.core.ToastScheduler;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * V2's threading model: the scheduler is confined to the main thread and every other thread
+ * hands its calls over through an {@link OpQueue}.
+ */
+@RunWith(Parameterized.class)
+public class OpQueueStressTest {
+
+    private static final int THREADS = 8;
+    private static final int TOASTS_PER_THREAD = 400;
+
+    private static final int OP_ENQUEUE = 0;
+    private static final int OP_DISMISS = 1;
+    private static final int OP_ON_SHOWN = 2;
+    private static final int OP_ON_DISMISSED = 3;
+
+    @Parameterized.Parameters(name = "policy={0}")
+    public static Collection<Object[]> policies() {
+        return Arrays.asList(new Object[][]{
+                {ToastScheduler.OVERFLOW_DROP_OLDEST},
+                {ToastScheduler.OVERFLOW_DROP_NEWEST},
+                {ToastScheduler.OVERFLOW_REPLACE_CURRENT},
+                {ToastScheduler.OVERFLOW_DROP_LOWEST_PRIORITY},
+        });
+    }
+
+    private final int mPolicy;
+    private final MainThread mMain = new MainThread(null);
+    private ToastScheduler mScheduler;
+    private OpQueue mOps;
+
+    public OpQueueStressTest(int policy) {
+        mPolicy = policy;
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        mMain.shutdown();
+    }
+
+    @Test
+    public void concurrentEnqueueAndDismiss() throws Exception {
+        final StressDisplay display = new StressDisplay(mMain) {
+            @Override
+            void reportShown(StressRecord record) {
+                mOps.post(OP_ON_SHOWN, record, 0);
+            }
+
+            @Override
+            void reportDismissed(StressRecord record) {
+                mOps.post(OP_ON_DISMISSED, record, 0);
+            }
+        };
+        mScheduler = new ToastScheduler(Clock.SYSTEM, mMain, display);
+        mScheduler.setListener(display.listener);
+        mScheduler.setOverflowPolicy(mPolicy);
+        mScheduler.setCapacity(4);
+        mOps = new OpQueue(new OpQueue.Target() {
+            @Override
+            public void apply(int op, Object subject, Object extra, int arg) {
+                if (!mMain.isCurrentThread()) {
+                    throw new AssertionError("applied off the main thread");
+                }
+                final StressRecord record = (StressRecord) subject;
+                switch (op) {
+                    case OP_ENQUEUE:
+                        if (mScheduler.enqueue(record) == ToastScheduler.RESULT_REJECTED) {
+                            record.rejects.incrementAndGet();
+                        }
+                        break;
+                    case OP_DISMISS:
+                        mScheduler.dismiss(record, arg);
+                        break;
+                    case OP_ON_SHOWN:
+                        mScheduler.onShown(record);
+                        break;
+                    case OP_ON_DISMISSED:
+                        mScheduler.onDismissed(record);
+                        break;
+                }
+            }
+        }, new OpQueue.Owner() {
+            @Override
+            public boolean isOwnerThread() {
+                return mMain.isCurrentThread();
+            }
+
+            @Override
+            public void requestDrain() {
+                mMain.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mOps.drain();
+                    }
+                });
+            }
+        });
+
+        final List<List<StressRecord>> records = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            records.add(new ArrayList<StressRecord>(TOASTS_PER_THREAD));
+        }
+        StressRunner.run(THREADS, new StressRunner.Producer() {
+            @Override
+            public void run(int thread) throws Exception {
+                final Random random = new Random(thread);
+                final List<StressRecord> mine = records.get(thread);
+                for (int i = 0; i < TOASTS_PER_THREAD; i++) {
+                    final StressRecord record = new StressRecord(1 + random.nextInt(3),
+                            random.nextInt(4));
+                    mine.add(record);
+                    mOps.post(OP_ENQUEUE, record, 0);
+                    if (random.nextInt(4) == 0) {
+                        final StressRecord victim = mine.get(random.nextInt(mine.size()));
+                        mOps.post(OP_DISMISS, victim, ToastScheduler.EVENT_MANUAL);
+                    }
+                    if (random.nextInt(8) == 0) {
+                        Thread.sleep(1);
+                    }
+                }
+            }
+        });
+
+        StressRunner.awaitQuiescence(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return mMain.call(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        mOps.drain();
+                        return mScheduler.getCurrent() == null && mScheduler.getQueueDepth() == 0;
+                    }
+                });
+            }
+        }, 30000);
+        StressRunner.verify(display, records);
+    }
+}
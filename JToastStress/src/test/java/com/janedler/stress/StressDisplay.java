@@ -0,0 +1,82 @@
+package com.janedler.stress;
+
+import com.janedler.core.ToastRecord;
+import com.janedler.core.ToastScheduler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Display which, like a real JToast, reports shown and dismissed later from the main thread,
+ * and checks that no two toasts are ever on screen at once.
+ */
+abstract class StressDisplay implements ToastScheduler.Display {
+
+    final MainThread main;
+    final AtomicInteger visible = new AtomicInteger();
+    final AtomicInteger maxVisible = new AtomicInteger();
+    final AtomicInteger shown = new AtomicInteger();
+
+    final ToastScheduler.Listener listener = new ToastScheduler.Listener() {
+        @Override
+        public void onDropped(ToastRecord record, int event) {
+            ((StressRecord) record).drops.incrementAndGet();
+        }
+
+        @Override
+        public void onDismissed(ToastRecord record) {
+            ((StressRecord) record).finishes.incrementAndGet();
+        }
+    };
+
+    StressDisplay(MainThread main) {
+        this.main = main;
+    }
+
+    /**
+     * Pass {@link ToastScheduler#onShown} on, the way the threading model under test does.
+     */
+    abstract void reportShown(StressRecord record);
+
+    /**
+     * Pass {@link ToastScheduler#onDismissed} on, the way the threading model under test does.
+     */
+    abstract void reportDismissed(StressRecord record);
+
+    @Override
+    public boolean show(ToastRecord record) {
+        final StressRecord r = (StressRecord) record;
+        r.shows.incrementAndGet();
+        shown.incrementAndGet();
+        final int count = visible.incrementAndGet();
+        int max;
+        while (count > (max = maxVisible.get()) && !maxVisible.compareAndSet(max, count)) {
+            // retry
+        }
+        main.post(new Runnable() {
+            @Override
+            public void run() {
+                reportShown(r);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean dismiss(ToastRecord record, int event) {
+        final StressRecord r = (StressRecord) record;
+        if (r.drops.get() > 0) {
+            // Dropped from the queue, never on screen
+            return false;
+        }
+        r.dismisses.incrementAndGet();
+        main.post(new Runnable() {
+            @Override
+            public void run() {
+                // Off screen before the next toast may be shown
+                visible.decrementAndGet();
+                reportDismissed(r);
+            }
+        });
+        return true;
+    }
+}
@@ -0,0 +1,45 @@
+package com.janedler.stress;
+
+import com.janedler.core.ToastRecord;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A toast enqueued exactly once, counting every signal it receives so the tests can check that
+ * it ended exactly one way.
+ */
+final class StressRecord extends ToastRecord {
+
+    final AtomicInteger shows = new AtomicInteger();
+    final AtomicInteger dismisses = new AtomicInteger();
+    final AtomicInteger drops = new AtomicInteger();
+    final AtomicInteger rejects = new AtomicInteger();
+    final AtomicInteger finishes = new AtomicInteger();
+
+    StressRecord(int durationMs, int priority) {
+        setDurationMs(durationMs);
+        setPriority(priority);
+    }
+
+    /**
+     * @return null if the record's signals are consistent, otherwise what is wrong with them
+     */
+    String check() {
+        final int outcomes = finishes.get() + drops.get() + rejects.get();
+        if (outcomes != 1) {
+            return "ended " + outcomes + " times: " + this;
+        }
+        if (shows.get() > 1 || dismisses.get() > shows.get()
+                || finishes.get() != dismisses.get()) {
+            return "inconsistent: " + this;
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "StressRecord{state=" + getState() + ", shows=" + shows + ", dismisses="
+                + dismisses + ", finishes=" + finishes + ", drops=" + drops + ", rejects="
+                + rejects + "}";
+    }
+}
@@ -0,0 +1,89 @@
+package com.janedler.stress;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts producer threads together and waits for them, rethrowing the first failure.
+ */
+final class StressRunner {
+
+    interface Producer {
+        void run(int thread) throws Exception;
+    }
+
+    static void run(int threads, final Producer producer) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> failures = new ArrayList<>();
+        final List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            final int index = i;
+            final Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        producer.run(index);
+                    } catch (Throwable t) {
+                        synchronized (failures) {
+                            failures.add(t);
+                        }
+                    }
+                }
+            }, "stress-producer-" + i);
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(60));
+            if (worker.isAlive()) {
+                throw new AssertionError(worker.getName() + " is stuck");
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new AssertionError(failures.get(0));
+        }
+    }
+
+    /**
+     * Check the invariants once the scheduler is idle: never more than one toast on screen, and
+     * every record ended exactly one way (shown and dismissed, dropped or rejected).
+     */
+    static void verify(StressDisplay display, List<List<StressRecord>> records) {
+        if (display.maxVisible.get() > 1) {
+            throw new AssertionError(display.maxVisible.get() + " toasts visible at once");
+        }
+        if (display.visible.get() != 0) {
+            throw new AssertionError(display.visible.get() + " toasts still visible");
+        }
+        for (List<StressRecord> perThread : records) {
+            for (StressRecord record : perThread) {
+                final String problem = record.check();
+                if (problem != null) {
+                    throw new AssertionError(problem);
+                }
+            }
+        }
+        if (display.shown.get() == 0) {
+            throw new AssertionError("nothing was shown");
+        }
+    }
+
+    /**
+     * Poll {@code condition} until it holds, failing after {@code timeoutMs}.
+     */
+    static void awaitQuiescence(Callable<Boolean> condition, long timeoutMs)
+            throws Exception {
+        final long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!condition.call()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("scheduler never went idle");
+            }
+            Thread.sleep(5);
+        }
+    }
+}
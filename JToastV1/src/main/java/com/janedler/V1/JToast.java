@@ -4,14 +4,22 @@ import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.PixelFormat;
 import android.os.Build;
-import android.os.Handler;
-import android.util.Log;
+import android.os.Process;
+import android.util.DisplayMetrics;
 import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.WindowManager;
 import android.widget.TextView;
 
+import com.janedler.core.ToastRecord;
+import com.janedler.core.ToastScheduler;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * @author janedler
  * @ClassName: com.janedler.V1.JToast
@@ -23,35 +31,95 @@ import android.widget.TextView;
  * JToast.makeText(mContext,"hello world",JToast.LENGTH_SHORT).show();
  */
 public class JToast {
-    private static final String TAG = "JToast";
-    private static final boolean isShowTag = true;
 
     public static final int LENGTH_SHORT = 2000;
     public static final int LENGTH_LONG = 3500;
 
-    private Context mContext;
+    public static final int PRIORITY_LOW = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_HIGH = 2;
+    public static final int PRIORITY_CRITICAL = 3;
+
+    /**
+     * Toast被丢弃时的回调
+     *
+     * @see #setOnShedListener(OnShedListener)
+     */
+    public interface OnShedListener {
+        /**
+         * @param toast  被丢弃的Toast
+         * @param reason {@link JToastManager#SHED_RATE_LIMITED}, {@link JToastManager#SHED_QUEUE_FULL},
+         *               {@link JToastManager#SHED_DISPLACED}或{@link JToastManager#SHED_AGGREGATED}
+         */
+        void onShed(JToast toast, int reason);
+    }
+
+    /**
+     * 备用的默认布局: {@link #prewarm(Context)}准备好的, 或者上一个Toast隐藏后留下的。
+     * Toast排到显示时取走 没有时才inflate
+     */
+    private static final AtomicReference<View> sPrewarmedView = new AtomicReference<>();
+    private static final AtomicBoolean sPrewarming = new AtomicBoolean(false);
+
+    /**
+     * {@link #obtain}创建的Toast在隐藏或被丢弃后回到这里 连同它的LayoutParams一起复用
+     */
+    private static final int MAX_ENTITY_POOL_SIZE = 8;
+    private static final ArrayDeque<JToast.ToastEntity> sEntityPool =
+            new ArrayDeque<>(MAX_ENTITY_POOL_SIZE);
+
+    Context mContext;
     private int mDuration;
-    private JToast.ToastEntity mEntity;
+    JToast.ToastEntity mEntity;
     private View mView;
 
     public JToast(Context context) {
-        this.mContext = context;
+        this();
+        init(context);
+    }
+
+    private JToast() {
         mEntity = new JToast.ToastEntity();
+        mEntity.mToast = this;
+    }
+
+    private void init(Context context) {
+        //排队的Toast会一直持有mContext 不能是Activity
+        final Context appContext = context.getApplicationContext();
+        this.mContext = appContext != null ? appContext : context;
+        mEntity.mRateLimitTag = context.getClass().getName();
         mEntity.mGravity = Gravity.BOTTOM;
+        mEntity.mX = 0;
         mEntity.mY = (int) mContext.getResources().getDimension(R.dimen.cfp_toast_y_offset);
+        mEntity.mHorizontalMargin = 0;
+        mEntity.mVerticalMargin = 0;
     }
 
     /**
      * Show the view for the specified duration.
+     *
+     * @see #tryShow()
      */
     public void show() {
-        if (mView == null) {
-            return;
+        tryShow();
+    }
+
+    /**
+     * Show the view for the specified duration, like {@link #show()}.
+     *
+     * @return false if the toast was shed because of rate limiting or a full queue
+     */
+    public boolean tryShow() {
+        if (mView == null && !mEntity.mDefaultLayout) {
+            return false;
         }
         JToast.ToastEntity entity = mEntity;
         entity.mNextView = mView;
         entity.mDuration = mDuration;
-        JToastManager.getInstance().enqueueToast(mContext, entity, mDuration);
+        // 排队期间在后台线程计算文本的Layout
+        JToastTextLayouts.precompute(mContext, entity.mText);
+        int result = JToastManager.getInstance().enqueueToastForResult(entity);
+        return result == JToastManager.RESULT_QUEUED || result == JToastManager.RESULT_COALESCED;
     }
 
     /**
@@ -64,11 +132,16 @@ public class JToast {
     }
 
     /**
-     * Return the view.
+     * Return the view. makeText()创建的Toast在排到显示时才加载布局, 在那之前调用会立即加载,
+     * 之后这个Toast一直使用返回的View
      *
      * @see #setView
      */
     public View getView() {
+        if (mView == null && mEntity.mDefaultLayout) {
+            mView = inflateLayout(mContext);
+            bindText(mView, mEntity.mText);
+        }
         return mView;
     }
 
@@ -156,6 +229,56 @@ public class JToast {
         return mEntity.mY;
     }
 
+    /**
+     * Set the priority of this toast. Queued toasts are shown by priority, in order within the
+     * same priority, and overflow drops the least important first. A {@link #PRIORITY_CRITICAL}
+     * toast preempts a less important one on screen, which is shown again afterwards for the
+     * time it had left.
+     *
+     * @see #PRIORITY_NORMAL
+     */
+    public void setPriority(int priority) {
+        mEntity.setPriority(priority);
+    }
+
+    /**
+     * Return the priority.
+     *
+     * @see #setPriority
+     */
+    public int getPriority() {
+        return mEntity.getPriority();
+    }
+
+    /**
+     * Set the channel of this toast. Every channel has its own queue, capacity and timeout, and
+     * toasts of different channels are shown at the same time, so a burst in one channel never
+     * delays another. Toasts without a channel are put into one channel per gravity, see
+     * {@link #setGravity(int, int, int)}.
+     *
+     * @see JToastManager#setChannelCapacity(Object, int)
+     */
+    public void setChannel(Object channel) {
+        mEntity.mChannel = channel;
+    }
+
+    /**
+     * Set the tag whose rate limit this toast counts against. Defaults to the class name of the
+     * context the toast was created with.
+     *
+     * @see JToastManager#setRateLimit(int, float)
+     */
+    public void setRateLimitTag(Object tag) {
+        mEntity.mRateLimitTag = tag;
+    }
+
+    /**
+     * Set a listener called when this toast is shed instead of being shown.
+     */
+    public void setOnShedListener(OnShedListener listener) {
+        mEntity.mShedListener = listener;
+    }
+
     /**
      * Gets the LayoutParams for the Toast window.
      *
@@ -182,18 +305,29 @@ public class JToast {
      */
     public void setText(CharSequence s) {
         if (mView == null) {
+            if (mEntity.mDefaultLayout) {
+                mEntity.mText = s;
+            }
             return;
         }
-        TextView tv = (TextView) mView.findViewById(R.id.message);
-        if (tv == null) {
-            return;
+        if (bindText(mView, s)) {
+            mEntity.mText = s;
         }
-        tv.setText(s);
+    }
+
+    /**
+     * Set the key used to coalesce this toast with identical toasts still waiting in the queue.
+     * By default the text of the toast is used.
+     *
+     * @see JToastManager#setCoalesceMode(int)
+     */
+    public void setCoalesceKey(Object key) {
+        mEntity.mCoalesceKey = key;
     }
 
 
     /**
-     * 创建CFPToast
+     * 创建CFPToast 只记录文字和显示参数, 布局在Toast排到显示时才加载(见{@link #getView()})
      *
      * @param context  上下文 如果传人null CFPToast就会默认使用applicationContext
      * @param text     CFPToast文字显示
@@ -202,12 +336,144 @@ public class JToast {
      */
     public static JToast makeText(Context context, CharSequence text, int duration) {
         JToast result = new JToast(context);
-        View view = LayoutInflater.from(context).inflate(R.layout.ui_toast_layout, null);
+        result.setUp(text, duration);
+        return result;
+    }
+
+    /**
+     * 和{@link #makeText(Context, CharSequence, int)}一样 但复用已经隐藏的Toast: 对象本身和
+     * 它的WindowManager.LayoutParams都不再重新创建。
+     * <p/>
+     * 返回的Toast在隐藏或被丢弃(见{@link OnShedListener})后立即回到池中, 所以show()之后不能再持有它,
+     * 也不能再次show()
+     */
+    public static JToast obtain(Context context, CharSequence text, int duration) {
+        JToast.ToastEntity entity;
+        synchronized (sEntityPool) {
+            entity = sEntityPool.poll();
+        }
+        final JToast result;
+        if (entity == null) {
+            result = new JToast(context);
+        } else {
+            result = entity.mToast;
+            result.init(context);
+        }
+        result.mEntity.mRecyclable = true;
+        result.setUp(text, duration);
+        return result;
+    }
+
+    private void setUp(CharSequence text, int duration) {
+        mEntity.mDefaultLayout = true;
+        mEntity.mText = text;
+        mDuration = duration;
+    }
+
+    private static boolean bindText(View view, CharSequence text) {
         TextView tv = (TextView) view.findViewById(R.id.message);
+        if (tv == null) {
+            return false;
+        }
         tv.setText(text);
-        result.mView = view;
-        result.mDuration = duration;
-        return result;
+        return true;
+    }
+
+    /**
+     * 在主线程为排到显示的Toast取一个默认布局 优先使用备用的布局
+     */
+    static View obtainLayout(Context context) {
+        final View view = sPrewarmedView.getAndSet(null);
+        return view != null ? view : inflateLayout(context);
+    }
+
+    /**
+     * Toast隐藏后把{@link #obtainLayout(Context)}取走的布局留作备用 只保留一个
+     */
+    static void releaseLayout(View view) {
+        sPrewarmedView.compareAndSet(null, view);
+    }
+
+    /**
+     * 创建摘要Toast 在JToastManager的锁内调用: 不加载资源也不调用外部代码, 显示参数由调用方设置,
+     * 文字在主线程显示前才生成
+     *
+     * @param context Application Context
+     */
+    static JToast.ToastEntity newSummaryEntity(Context context) {
+        final JToast summary = new JToast();
+        summary.mContext = context;
+        summary.mDuration = LENGTH_LONG;
+        summary.mEntity.mDefaultLayout = true;
+        return summary.mEntity;
+    }
+
+    /**
+     * {@link #obtain}创建的Toast隐藏或被丢弃后调用 把它放回池中
+     */
+    static void recycle(JToast.ToastEntity entity) {
+        if (!entity.mRecyclable) {
+            return;
+        }
+        entity.mRecyclable = false;
+        entity.reset();
+        final JToast toast = entity.mToast;
+        toast.mDuration = 0;
+        //不保留View: 它还显示着上一次的文字, 之前的调用方也可能仍持有它(getView()), setView()设置的布局还可能持有Activity
+        toast.mView = null;
+        synchronized (sEntityPool) {
+            if (sEntityPool.size() < MAX_ENTITY_POOL_SIZE) {
+                sEntityPool.offer(entity);
+            }
+        }
+    }
+
+    static View inflateLayout(Context context) {
+        final JToastMetrics.Listener metrics = JToastMetrics.sListener;
+        final long start = metrics != null ? System.nanoTime() : 0;
+        View view;
+        final boolean traced = JToastTrace.beginSection(JToastTrace.SECTION_INFLATE);
+        try {
+            view = LayoutInflater.from(context).inflate(R.layout.ui_toast_layout, null);
+        } finally {
+            JToastTrace.endSection(traced);
+        }
+        JToastTrace.record(JToastTrace.EVENT_INFLATE, 0);
+        if (metrics != null) {
+            metrics.onInflated(System.nanoTime() - start);
+        }
+        return view;
+    }
+
+    /**
+     * 提前准备第一个Toast 例如在Application.onCreate()中调用: 初始化JToastManager和JToastService,
+     * 并在后台线程inflate和measure一个Toast布局(包括toast_style_bg背景), 第一个Toast显示时直接使用它,
+     * 不用在主线程加载类和解析布局。可选调用 预热的布局被使用之前重复调用不会做任何事
+     *
+     * @param context 只使用它的applicationContext 不会持有Activity
+     */
+    public static void prewarm(Context context) {
+        JToastManager.getInstance();
+        if (sPrewarmedView.get() != null || !sPrewarming.compareAndSet(false, true)) {
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                try {
+                    final View view = inflateLayout(appContext);
+                    final DisplayMetrics display = appContext.getResources().getDisplayMetrics();
+                    final int mode = View.MeasureSpec.AT_MOST;
+                    view.measure(View.MeasureSpec.makeMeasureSpec(display.widthPixels, mode),
+                            View.MeasureSpec.makeMeasureSpec(display.heightPixels, mode));
+                    sPrewarmedView.compareAndSet(null, view);
+                } finally {
+                    sPrewarming.set(false);
+                }
+            }
+        }, "JToast-prewarm").start();
     }
 
     /**
@@ -223,37 +489,38 @@ public class JToast {
         return makeText(context, context.getResources().getText(resId), duration);
     }
 
-    public static class ToastEntity {
+    public static class ToastEntity extends ToastRecord {
 
         final WindowManager.LayoutParams mParams = new WindowManager.LayoutParams();
-        final Handler mHandler = new Handler();
         int mGravity;
         int mX;
         int mY = -1;
         float mHorizontalMargin;
         float mVerticalMargin;
         View mView;
-        View mNextView;
+        View mNextView; //为null且mDefaultLayout时 显示前才加载布局
+        boolean mDefaultLayout; //makeText()创建 使用ui_toast_layout
+        View mBoundLayout; //显示前加载的布局 隐藏后交还给JToast
         int mDuration;
         WindowManager mWM;
-
-
-        final Runnable mShow = new Runnable() {
-            @Override
-            public void run() {
-                handleShow();
-            }
-        };
-
-        final Runnable mHide = new Runnable() {
-            @Override
-            public void run() {
-                handleHide();
-                mNextView = null;
-            }
-        };
+        JToastWindow mWindow; //复用窗口时mView所在的窗口
+        CharSequence mText;
+        Object mCoalesceKey;
+        Object mIndexedKey; //入队时使用的合并key
+        int mRepeatCount = 1; //被合并的相同Toast数量 由JToastManager维护
+        boolean mShowingRepeatCount;
+        Object mRateLimitTag;
+        OnShedListener mShedListener;
+        int mShedReason; //被挤出队列的原因 由JToastManager在锁内设置
+        Object mChannel; //为null时按mGravity分通道
+        ToastScheduler mLane; //入队时所在的通道 在锁内设置
+        List<CharSequence> mAggregatedTexts; //摘要Toast合并的文字
+        boolean mRecyclable; //由obtain()创建 隐藏或被丢弃后回到sEntityPool
+        volatile int mShowGeneration; //每次入队加一 在锁内修改 用来识别过时的UI_HIDE
+        JToast mToast;
 
         ToastEntity() {
+            setPriority(PRIORITY_NORMAL);
             final WindowManager.LayoutParams params = mParams;
             params.height = WindowManager.LayoutParams.WRAP_CONTENT;
             params.width = WindowManager.LayoutParams.WRAP_CONTENT;
@@ -275,28 +542,86 @@ public class JToast {
         }
 
         /**
-         * schedule handleShow into the right thread
+         * 清除上一个Toast的状态 保留mParams和mToast的布局
+         */
+        void reset() {
+            setPriority(PRIORITY_NORMAL);
+            mView = null;
+            mNextView = null;
+            mDefaultLayout = false;
+            mBoundLayout = null;
+            mWindow = null;
+            mDuration = 0;
+            mText = null;
+            mCoalesceKey = null;
+            mIndexedKey = null;
+            mRepeatCount = 1;
+            mShowingRepeatCount = false;
+            mRateLimitTag = null;
+            mShedListener = null;
+            mShedReason = 0;
+            mChannel = null;
+            mLane = null;
+            mAggregatedTexts = null;
+        }
+
+        /**
+         * schedule handleShow into the main thread, batched with the rest of the next frame
          */
         public void show() {
-            if (isShowTag) Log.v(TAG, "SHOW: " + this);
-            mHandler.post(mShow);
+            JToastTrace.record(JToastTrace.EVENT_SHOW, mDuration);
+            JToastService.getInstance().postToUi(JToastService.UI_SHOW, this, 0);
         }
 
         /**
-         * schedule handleHide into the right thread
+         * schedule handleHide into the main thread, batched with the rest of the next frame
          */
         public void hide() {
-            if (isShowTag) Log.v(TAG, "HIDE: " + this);
-            mHandler.post(mHide);
+            JToastTrace.record(JToastTrace.EVENT_HIDE, 0);
+            JToastService.getInstance().postToUi(JToastService.UI_HIDE, this, mShowGeneration);
+        }
+
+        /**
+         * 被打断时调用 和hide()一样移除窗口 但保留mNextView 重新排到时再次显示
+         */
+        public void suspend() {
+            JToastTrace.record(JToastTrace.EVENT_HIDE, 0);
+            JToastService.getInstance().postToUi(JToastService.UI_SUSPEND, this, 0);
         }
 
         public void handleShow() {
-            if (isShowTag)
-                Log.v(TAG, "HANDLE SHOW: " + this + " mView=" + mView + " mNextView=" + mNextView);
+            if (mNextView == null && mDefaultLayout) {
+                if (mText == null && mAggregatedTexts != null) {
+                    //摘要Toast的文字在锁外生成 可能调用OnAggregateListener
+                    mText = JToastManager.getInstance().getSummaryText(mToast.mContext,
+                            mAggregatedTexts);
+                }
+                //排队时只有文字和参数 排到显示才取布局
+                mBoundLayout = JToast.obtainLayout(mToast.mContext);
+                bindText(mBoundLayout, mText);
+                mShowingRepeatCount = false;
+                mNextView = mBoundLayout;
+            }
+            if (mNextView == null) {
+                return;
+            }
             if (mView != mNextView) {
                 // remove the old view if necessary
                 handleHide();
                 mView = mNextView;
+                if (mText != null && (mRepeatCount > 1 || mShowingRepeatCount)) {
+                    TextView tv = (TextView) mView.findViewById(R.id.message);
+                    if (tv != null) {
+                        mShowingRepeatCount = mRepeatCount > 1;
+                        tv.setText(mShowingRepeatCount ? mText + " (x" + mRepeatCount + ")" : mText);
+                    }
+                }
+                View message = mView.findViewById(R.id.message);
+                if (message instanceof JToastMessageView) {
+                    // 带重复次数的文本没有提前计算 由TextView自己测量
+                    ((JToastMessageView) message).setPrecomputedLayout(
+                            JToastTextLayouts.get(mShowingRepeatCount ? null : mText));
+                }
                 Context context = mView.getContext().getApplicationContext();
                 if (context == null) {
                     context = mView.getContext();
@@ -307,26 +632,61 @@ public class JToast {
                 mParams.y = mY;
                 mParams.verticalMargin = mVerticalMargin;
                 mParams.horizontalMargin = mHorizontalMargin;
+                //同一通道连续显示的Toast共用一个窗口 只替换其中的View
+                mWindow = JToastWindow.obtain(mLane, context);
+                if (mWindow != null) {
+                    mWindow.show(mView, mParams);
+                    return;
+                }
                 if (mView.getParent() != null) {
-                    if (isShowTag) Log.v(TAG, "REMOVE! " + mView + " in " + this);
-                    mWM.removeView(mView);
+                    removeViewTraced();
+                }
+                final boolean traced = JToastTrace.beginSection(JToastTrace.SECTION_ADD_VIEW);
+                try {
+                    JToastTrace.record(JToastTrace.EVENT_ADD_VIEW, 0);
+                    mWM.addView(mView, mParams);
+                } finally {
+                    JToastTrace.endSection(traced);
                 }
-                if (isShowTag) Log.v(TAG, "ADD! " + mView + " in " + this);
-                mWM.addView(mView, mParams);
             }
         }
 
         public void handleHide() {
-            if (isShowTag) Log.v(TAG, "HANDLE HIDE: " + this + " mView=" + mView);
             if (mView != null) {
-                if (mView.getParent() != null) {
-                    if (isShowTag) Log.v(TAG, "REMOVE! " + mView + " in " + this);
-                    mWM.removeView(mView);
+                if (mWindow != null) {
+                    mWindow.hide(mView);
+                    mWindow = null;
+                } else if (mView.getParent() != null) {
+                    removeViewTraced();
                 }
                 mView = null;
             }
         }
 
+        /**
+         * 隐藏后调用 放开显示前加载的布局。setView()设置的View留在mNextView:
+         * 隐藏可能晚于同一帧内的再次显示, 那时它已经是下一次要显示的View
+         */
+        void releaseLayout() {
+            if (mBoundLayout != null) {
+                if (mNextView == mBoundLayout) {
+                    mNextView = null;
+                }
+                JToast.releaseLayout(mBoundLayout);
+                mBoundLayout = null;
+            }
+        }
+
+        private void removeViewTraced() {
+            final boolean traced = JToastTrace.beginSection(JToastTrace.SECTION_REMOVE_VIEW);
+            try {
+                JToastTrace.record(JToastTrace.EVENT_REMOVE_VIEW, 0);
+                mWM.removeView(mView);
+            } finally {
+                JToastTrace.endSection(traced);
+            }
+        }
+
 
     }
 }
@@ -1,8 +1,18 @@
 package com.janedler.V1;
 
 import android.content.Context;
-import android.util.Log;
+import android.os.SystemClock;
 
+import com.janedler.core.ToastLanes;
+import com.janedler.core.ToastRecord;
+import com.janedler.core.ToastScheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.LinkedBlockingDeque;
 
 /**
@@ -13,7 +23,139 @@ import java.util.concurrent.LinkedBlockingDeque;
  */
 public class JToastManager {
 
-    private static final LinkedBlockingDeque<JToast.ToastEntity> mQueue = new LinkedBlockingDeque(128);
+    /**
+     * 不合并 每个Toast都进入队列
+     */
+    public static final int COALESCE_NONE = 0;
+    /**
+     * 队列中已有相同的Toast时丢弃新的Toast
+     */
+    public static final int COALESCE_DROP = 1;
+    /**
+     * 队列中已有相同的Toast时延长它的显示时间 最长为{@link #MAX_COALESCED_DURATION}
+     */
+    public static final int COALESCE_EXTEND = 2;
+    /**
+     * 队列中已有相同的Toast时在它的文字后面显示合并的数量 如"(x3)"
+     */
+    public static final int COALESCE_COUNT = 3;
+
+    /**
+     * COALESCE_EXTEND模式下合并后的最长显示时间
+     */
+    public static final int MAX_COALESCED_DURATION = JToast.LENGTH_LONG * 2;
+
+    /**
+     * 队列满时拒绝新的Toast
+     */
+    public static final int OVERFLOW_REJECT = 0;
+    /**
+     * 队列满时丢弃优先级最低的Toast中等待最久的
+     */
+    public static final int OVERFLOW_DROP_OLDEST = 1;
+    /**
+     * 队列满时丢弃优先级最低的Toast 优先级相同时丢弃等待最久的 新Toast优先级最低时拒绝新Toast
+     */
+    public static final int OVERFLOW_DROP_LOWEST_PRIORITY = 2;
+
+    /**
+     * enqueueToast返回值: 进入队列
+     */
+    public static final int RESULT_QUEUED = 0;
+    /**
+     * enqueueToast返回值: 合并到了队列中相同的Toast上
+     */
+    public static final int RESULT_COALESCED = 1;
+    /**
+     * enqueueToast返回值: 超过限流被丢弃
+     */
+    public static final int RESULT_RATE_LIMITED = 2;
+    /**
+     * enqueueToast返回值: 队列已满被丢弃
+     */
+    public static final int RESULT_REJECTED = 3;
+
+    /**
+     * 丢弃原因: 超过限流
+     */
+    public static final int SHED_RATE_LIMITED = 0;
+    /**
+     * 丢弃原因: 队列已满 新Toast被拒绝
+     */
+    public static final int SHED_QUEUE_FULL = 1;
+    /**
+     * 丢弃原因: 已在队列中 为新Toast让出位置
+     */
+    public static final int SHED_DISPLACED = 2;
+    /**
+     * 丢弃原因: 和队列中其它Toast一起被合并成了一个摘要Toast
+     */
+    public static final int SHED_AGGREGATED = 3;
+
+    /**
+     * 队列中的Toast被合并成摘要Toast时的回调 见{@link #setAggregation(int, long, OnAggregateListener)}
+     */
+    public interface OnAggregateListener {
+        /**
+         * 返回摘要Toast的文字 在主线程 摘要Toast显示之前调用 不持有锁
+         *
+         * @param texts 被合并的Toast的文字 按入队顺序 合并计数的Toast(x3)出现多次
+         * @return null时使用默认文字"<数量> messages — latest: <最新的文字>"
+         */
+        CharSequence getSummaryText(Context context, List<CharSequence> texts);
+
+        /**
+         * 合并完成后在锁外调用 被合并的Toast随后以{@link #SHED_AGGREGATED}通知OnShedListener
+         *
+         * @param summary 代替它们显示的摘要Toast
+         * @param texts   被合并的Toast的文字 包括之前的摘要Toast合并的文字
+         */
+        void onAggregated(JToast summary, List<CharSequence> texts);
+    }
+
+    public static final int MAX_QUEUE_CAPACITY = 128;
+
+    private final JToastService mService = JToastService.getInstance();
+
+    /**
+     * 和队列共用JToastService的锁
+     */
+    private final Object mLock = mService.mLock;
+
+    /**
+     * 合并key到队列中Toast的索引 与队列一起在mLock下修改
+     */
+    private final HashMap<Object, JToast.ToastEntity> mCoalesceIndex = new HashMap<>();
+    private volatile int mCoalesceMode = COALESCE_NONE;
+
+    /**
+     * 在mLock下被挤出队列的Toast 释放锁之后再通知它们的OnShedListener
+     */
+    private final ArrayList<JToast.ToastEntity> mDisplaced = new ArrayList<>();
+
+    /**
+     * 在mLock下创建的摘要Toast 释放锁之后再通知OnAggregateListener
+     */
+    private final ArrayList<JToast.ToastEntity> mSummaries = new ArrayList<>();
+    private volatile OnAggregateListener mAggregateListener;
+
+    /**
+     * 最多保留多少个限流tag的令牌桶 超出时丢弃最久没有使用的
+     */
+    private static final int MAX_RATE_LIMIT_TAGS = 64;
+
+    /**
+     * 每个限流tag一个令牌桶 mRateLimitBurst为0时不限流。按访问顺序排列, tag是动态生成的也不会无限增长
+     */
+    private final LinkedHashMap<Object, TokenBucket> mRateLimiters =
+            new LinkedHashMap<Object, TokenBucket>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, TokenBucket> eldest) {
+                    return size() > MAX_RATE_LIMIT_TAGS;
+                }
+            };
+    private int mRateLimitBurst;
+    private float mRateLimitPerSecond;
 
     private static class CFPToastManagerHolder {
         private static JToastManager instance = new JToastManager();
@@ -24,30 +166,414 @@ public class JToastManager {
     }
 
     private JToastManager() {
+        synchronized (mLock) {
+            final ToastLanes lanes = mService.getLanesLocked();
+            lanes.setCapacity(MAX_QUEUE_CAPACITY);
+            lanes.setOverflowPolicy(ToastScheduler.OVERFLOW_DROP_NEWEST);
+            //PRIORITY_CRITICAL的Toast打断正在显示的优先级更低的Toast
+            lanes.setPreemptionPriority(JToast.PRIORITY_CRITICAL);
+        }
+    }
+
+    /**
+     * 设置队列中相同Toast的合并方式 相同是指{@link JToast#setCoalesceKey(Object)}设置的key相同,
+     * 没有设置key时比较Toast的文字
+     *
+     * @param mode {@link #COALESCE_NONE}, {@link #COALESCE_DROP}, {@link #COALESCE_EXTEND}
+     *             或{@link #COALESCE_COUNT}
+     */
+    public void setCoalesceMode(int mode) {
+        mCoalesceMode = mode;
+        if (mode == COALESCE_NONE) {
+            synchronized (mLock) {
+                mCoalesceIndex.clear();
+            }
+        }
+    }
+
+    public int getCoalesceMode() {
+        return mCoalesceMode;
+    }
+
+    /**
+     * 设置每个通道的队列容量 最大为{@link #MAX_QUEUE_CAPACITY} 单独设置过容量的通道除外
+     */
+    public void setQueueCapacity(int capacity) {
+        synchronized (mLock) {
+            mService.getLanesLocked().setCapacity(
+                    Math.max(1, Math.min(capacity, MAX_QUEUE_CAPACITY)));
+        }
+        notifyDisplaced();
+    }
+
+    /**
+     * 单独设置一个通道的队列容量
+     *
+     * @param channel  {@link JToast#setChannel(Object)}设置的通道 没有设置通道的Toast按gravity
+     *                 分通道 此时传入Integer类型的gravity
+     * @param capacity 0表示恢复{@link #setQueueCapacity(int)}设置的容量
+     */
+    public void setChannelCapacity(Object channel, int capacity) {
+        synchronized (mLock) {
+            mService.getLanesLocked().setLaneCapacity(channel,
+                    Math.min(capacity, MAX_QUEUE_CAPACITY));
+        }
+        notifyDisplaced();
+    }
+
+    /**
+     * 设置队列满时的处理方式
+     *
+     * @param policy {@link #OVERFLOW_REJECT}, {@link #OVERFLOW_DROP_OLDEST}
+     *               或{@link #OVERFLOW_DROP_LOWEST_PRIORITY}
+     */
+    public void setOverflowPolicy(int policy) {
+        final int schedulerPolicy;
+        switch (policy) {
+            case OVERFLOW_DROP_OLDEST:
+                schedulerPolicy = ToastScheduler.OVERFLOW_DROP_OLDEST;
+                break;
+            case OVERFLOW_DROP_LOWEST_PRIORITY:
+                schedulerPolicy = ToastScheduler.OVERFLOW_DROP_LOWEST_PRIORITY;
+                break;
+            case OVERFLOW_REJECT:
+            default:
+                schedulerPolicy = ToastScheduler.OVERFLOW_DROP_NEWEST;
+                break;
+        }
+        synchronized (mLock) {
+            mService.getLanesLocked().setOverflowPolicy(schedulerPolicy);
+        }
+    }
+
+    /**
+     * 设置突发合并 每个通道分别合并: 等待中的Toast达到threshold个 或者windowMs内入队了threshold个并且至少两个在等待时,
+     * 把所有等待中的Toast合并成一个摘要Toast 显示{@link JToast#LENGTH_LONG} 不管积压了多少
+     * 都只占用一个Toast的显示时间
+     *
+     * @param threshold 0表示不合并 否则至少为2 不应超过队列容量
+     * @param windowMs  0表示只按队列长度合并
+     * @param listener  可以为null
+     */
+    public void setAggregation(int threshold, long windowMs, OnAggregateListener listener) {
+        synchronized (mLock) {
+            mAggregateListener = listener;
+            mService.getLanesLocked().setAggregation(threshold > 0 ? mAggregator : null,
+                    threshold, windowMs);
+        }
+    }
+
+    /**
+     * 在mLock下被ToastScheduler调用 创建摘要Toast: 锁内只收集被合并的文字和显示参数,
+     * 摘要的文字由{@link #getSummaryText(Context, List)}在显示前生成
+     */
+    private final ToastScheduler.Aggregator mAggregator = new ToastScheduler.Aggregator() {
+        @Override
+        public ToastRecord aggregate(List<ToastRecord> collapsed) {
+            final ArrayList<CharSequence> texts = new ArrayList<>();
+            int priority = JToast.PRIORITY_LOW;
+            for (int i = 0, size = collapsed.size(); i < size; i++) {
+                final JToast.ToastEntity entity = (JToast.ToastEntity) collapsed.get(i);
+                priority = Math.max(priority, entity.getPriority());
+                if (entity.mAggregatedTexts != null) {
+                    texts.addAll(entity.mAggregatedTexts);
+                } else if (entity.mText != null) {
+                    for (int n = 0; n < entity.mRepeatCount; n++) {
+                        texts.add(entity.mText);
+                    }
+                }
+            }
+            if (texts.isEmpty()) {
+                //只有自定义View的Toast 没有文字可以合并
+                return null;
+            }
+            final JToast.ToastEntity latest =
+                    (JToast.ToastEntity) collapsed.get(collapsed.size() - 1);
+            final JToast.ToastEntity entity = JToast.newSummaryEntity(latest.mToast.mContext);
+            entity.mAggregatedTexts = Collections.unmodifiableList(texts);
+            entity.mGravity = latest.mGravity;
+            entity.mX = latest.mX;
+            entity.mY = latest.mY;
+            //和被合并的Toast在同一个通道显示
+            entity.mLane = latest.mLane;
+            //不低于被合并的Toast中最重要的那个
+            entity.setPriority(priority);
+            entity.mDuration = JToast.LENGTH_LONG;
+            entity.setDurationMs(JToast.LENGTH_LONG);
+            mSummaries.add(entity);
+            return entity;
+        }
+    };
+
+    /**
+     * 生成摘要Toast的文字 在主线程显示摘要Toast之前调用 不持有锁
+     */
+    CharSequence getSummaryText(Context context, List<CharSequence> texts) {
+        final OnAggregateListener listener = mAggregateListener;
+        final CharSequence text = listener != null ? listener.getSummaryText(context, texts) : null;
+        if (text != null) {
+            return text;
+        }
+        return context.getString(R.string.jtoast_summary, texts.size(), texts.get(texts.size() - 1));
     }
 
+    /**
+     * 设置窗口复用 开启后同一通道连续显示的Toast共用一个窗口, 只替换窗口中的View并原地更新位置,
+     * 不再为每个Toast调用WindowManager的addView/removeView; 窗口空闲idleGraceMs后才移除。
+     * 窗口动画只在添加和移除窗口时播放
+     *
+     * @param idleGraceMs 0表示每个Toast使用自己的窗口(默认)
+     */
+    public void setWindowReuse(long idleGraceMs) {
+        JToastWindow.sIdleGraceMs = Math.max(0, idleGraceMs);
+    }
+
+    /**
+     * 为每个限流tag设置令牌桶限流 见{@link JToast#setRateLimitTag(Object)}
+     *
+     * @param burst            最多可以连续入队的Toast数量 0表示不限流
+     * @param permitsPerSecond 每秒补充的令牌数
+     */
+    public void setRateLimit(int burst, float permitsPerSecond) {
+        synchronized (mLock) {
+            mRateLimitBurst = Math.max(0, burst);
+            mRateLimitPerSecond = permitsPerSecond;
+            mRateLimiters.clear();
+        }
+    }
+
+    /**
+     * 将Toast加入队列
+     *
+     * @see #enqueueToastForResult(JToast.ToastEntity)
+     */
     public void enqueueToast(Context context, final JToast.ToastEntity entity, int duration) {
+        enqueueToastForResult(entity);
+    }
+
+    /**
+     * 将Toast加入队列 并返回它是否被接受
+     *
+     * @return {@link #RESULT_QUEUED}, {@link #RESULT_COALESCED}, {@link #RESULT_RATE_LIMITED}
+     * 或{@link #RESULT_REJECTED}
+     */
+    public int enqueueToastForResult(final JToast.ToastEntity entity) {
+        final boolean traced = JToastTrace.beginSection(JToastTrace.SECTION_ENQUEUE);
+        try {
+            return enqueueToastInternal(entity);
+        } finally {
+            JToastTrace.endSection(traced);
+        }
+    }
+
+    private int enqueueToastInternal(final JToast.ToastEntity entity) {
         if (entity == null) {
-            return;
+            return RESULT_REJECTED;
         }
-        mQueue.offer(entity);
-        Log.e("Thread", "mQueue size " + mQueue.size());
-        //检查并通知CFPToastService开始工作
-        JToastService.getInstance().notifiyAndCheckToastRuning();
+        final int mode = mCoalesceMode;
+        final int result;
+        //被挤掉时已经由notifyDisplaced()通知过
+        boolean notified = false;
+        synchronized (mLock) {
+            //之前的隐藏操作还没执行时 它不能再回收这个Toast
+            entity.mShowGeneration++;
+            final Object key = mode == COALESCE_NONE ? null : getCoalesceKey(entity);
+            final JToast.ToastEntity queued = key == null ? null : mCoalesceIndex.get(key);
+            if (queued != null) {
+                coalesce(queued, entity, mode);
+                JToastTrace.record(JToastTrace.EVENT_COALESCE, queued.mRepeatCount);
+                final JToastMetrics.Listener metrics = JToastMetrics.sListener;
+                if (metrics != null) {
+                    metrics.onCoalesced();
+                }
+                if (queued != entity) {
+                    //合并到了别的Toast上 自己不会再显示
+                    JToast.recycle(entity);
+                }
+                return RESULT_COALESCED;
+            }
+            if (!tryAcquireLocked(entity)) {
+                result = RESULT_RATE_LIMITED;
+            } else {
+                if (entity.getState() != ToastRecord.STATE_QUEUED) {
+                    entity.mRepeatCount = 1;
+                }
+                entity.setDurationMs(entity.mDuration);
+                if (!entity.isActive()) {
+                    //已经在队列中或正在显示的Toast留在原来的通道
+                    entity.mLane = mService.getLanesLocked().get(getChannel(entity));
+                }
+                switch (entity.mLane.enqueue(entity)) {
+                    case ToastScheduler.RESULT_REJECTED:
+                        result = RESULT_REJECTED;
+                        break;
+                    case ToastScheduler.RESULT_DROPPED:
+                        //进了队列但它是满队列中最不重要的 已经作为被挤掉的Toast通知过 这里只修正原因
+                        entity.mShedReason = SHED_QUEUE_FULL;
+                        notified = true;
+                        result = RESULT_REJECTED;
+                        break;
+                    case ToastScheduler.RESULT_UPDATED:
+                        //同一个JToast已经在队列中或者正在显示
+                        result = RESULT_COALESCED;
+                        break;
+                    default:
+                        result = RESULT_QUEUED;
+                        //直接显示的Toast不需要索引
+                        if (key != null && entity.getState() == ToastRecord.STATE_QUEUED) {
+                            entity.mIndexedKey = key;
+                            mCoalesceIndex.put(key, entity);
+                        }
+                        break;
+                }
+            }
+        }
+        notifyDisplaced();
+        if (result == RESULT_RATE_LIMITED) {
+            notifyShed(entity, SHED_RATE_LIMITED);
+        } else if (result == RESULT_REJECTED && !notified) {
+            notifyShed(entity, SHED_QUEUE_FULL);
+        }
+        return result;
+    }
+
+    private boolean tryAcquireLocked(JToast.ToastEntity entity) {
+        if (mRateLimitBurst <= 0) {
+            return true;
+        }
+        final Object tag = entity.mRateLimitTag;
+        final long now = SystemClock.uptimeMillis();
+        TokenBucket bucket = mRateLimiters.get(tag);
+        if (bucket == null) {
+            bucket = new TokenBucket(mRateLimitBurst, mRateLimitPerSecond, now);
+            mRateLimiters.put(tag, bucket);
+        }
+        return bucket.tryAcquire(now);
     }
 
+    /**
+     * Toast离开队列(显示或被挤出)时移除它的合并索引
+     */
+    void removeIndexLocked(JToast.ToastEntity entity) {
+        if (entity.mIndexedKey != null) {
+            if (mCoalesceIndex.get(entity.mIndexedKey) == entity) {
+                mCoalesceIndex.remove(entity.mIndexedKey);
+            }
+            entity.mIndexedKey = null;
+        }
+    }
+
+    /**
+     * 被ToastScheduler按溢出策略挤出队列的Toast 在mLock下调用
+     */
+    void onDisplacedLocked(JToast.ToastEntity entity, int event) {
+        removeIndexLocked(entity);
+        entity.mShedReason = event == ToastScheduler.EVENT_AGGREGATED
+                ? SHED_AGGREGATED : SHED_DISPLACED;
+        mDisplaced.add(entity);
+    }
+
+    /**
+     * 在锁外通知被挤出队列或被合并的Toast 以及新的摘要Toast
+     */
+    private void notifyDisplaced() {
+        JToast.ToastEntity[] displaced = null;
+        JToast.ToastEntity[] summaries = null;
+        OnAggregateListener listener;
+        synchronized (mLock) {
+            if (!mDisplaced.isEmpty()) {
+                displaced = mDisplaced.toArray(new JToast.ToastEntity[mDisplaced.size()]);
+                mDisplaced.clear();
+            }
+            if (!mSummaries.isEmpty()) {
+                summaries = mSummaries.toArray(new JToast.ToastEntity[mSummaries.size()]);
+                mSummaries.clear();
+            }
+            listener = mAggregateListener;
+        }
+        if (displaced != null) {
+            for (JToast.ToastEntity entity : displaced) {
+                notifyShed(entity, entity.mShedReason);
+            }
+        }
+        if (summaries != null && listener != null) {
+            for (JToast.ToastEntity entity : summaries) {
+                listener.onAggregated(entity.mToast, entity.mAggregatedTexts);
+            }
+        }
+    }
+
+    private static void notifyShed(JToast.ToastEntity entity, int reason) {
+        JToastTrace.record(JToastTrace.EVENT_SHED, reason);
+        final JToastMetrics.Listener metrics = JToastMetrics.sListener;
+        if (metrics != null) {
+            metrics.onShed(reason);
+        }
+        final JToast.OnShedListener listener = entity.mShedListener;
+        if (listener != null) {
+            listener.onShed(entity.mToast, reason);
+        }
+        JToast.recycle(entity);
+    }
+
+    /**
+     * 把新的Toast合并到队列中相同的Toast上
+     */
+    private static void coalesce(JToast.ToastEntity queued, JToast.ToastEntity incoming, int mode) {
+        switch (mode) {
+            case COALESCE_EXTEND:
+                if (queued != incoming) {
+                    queued.mDuration = Math.min(queued.mDuration + incoming.mDuration,
+                            MAX_COALESCED_DURATION);
+                    queued.setDurationMs(queued.mDuration);
+                }
+                break;
+            case COALESCE_COUNT:
+                queued.mRepeatCount++;
+                break;
+            case COALESCE_DROP:
+            default:
+                break;
+        }
+    }
+
+    private static Object getChannel(JToast.ToastEntity entity) {
+        return entity.mChannel != null ? entity.mChannel : entity.mGravity;
+    }
+
+    private static Object getCoalesceKey(JToast.ToastEntity entity) {
+        if (entity.mCoalesceKey != null) {
+            return entity.mCoalesceKey;
+        }
+        return entity.mText != null ? entity.mText.toString() : null;
+    }
+
+    /**
+     * 返回等待中Toast的快照 修改它不会影响队列
+     */
+    @Deprecated
     public LinkedBlockingDeque<JToast.ToastEntity> getQueue() {
-        Log.e("Thread", "mQueue size >> " + mQueue.size());
-        return mQueue;
+        final LinkedBlockingDeque<JToast.ToastEntity> queue = new LinkedBlockingDeque<>();
+        synchronized (mLock) {
+            final ArrayList<ToastRecord> records = new ArrayList<>();
+            mService.getLanesLocked().copyQueueTo(records);
+            for (ToastRecord record : records) {
+                queue.add((JToast.ToastEntity) record);
+            }
+        }
+        return queue;
     }
 
 
     public void cleanQueue() {
-        if (mQueue == null || mQueue.isEmpty()) {
-            return;
+        synchronized (mLock) {
+            mService.getLanesLocked().clearQueue();
+            for (JToast.ToastEntity entity : mCoalesceIndex.values()) {
+                entity.mIndexedKey = null;
+            }
+            mCoalesceIndex.clear();
         }
-        mQueue.clear();
     }
 
 
-}
\ No newline at end of file
+}
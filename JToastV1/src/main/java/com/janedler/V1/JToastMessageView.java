@@ -0,0 +1,105 @@
+package com.janedler.V1;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.AttributeSet;
+import android.widget.TextView;
+
+/**
+ * @author janedler
+ * @ClassName: com.janedler.V1.JToastMessageView
+ * @Description: ui_toast_layout的文本控件 可以直接测量和绘制JToastTextLayouts提前算好的Layout
+ * 不用在主线程断行
+ * <p/>
+ * 只有和TextView在同样宽度下的断行结果一致时才使用 文本改变后立即丢弃
+ * <p/>
+ * 由布局文件inflate LayoutInflater要求类和(Context, AttributeSet)构造函数都是public
+ */
+public final class JToastMessageView extends TextView {
+
+    private JToastTextLayouts.Entry mPrecomputed;
+
+    public JToastMessageView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    /**
+     * 当前文本使用entry 必须在{@link #setText}之后调用
+     */
+    void setPrecomputedLayout(JToastTextLayouts.Entry entry) {
+        if (mPrecomputed == entry) {
+            return;
+        }
+        mPrecomputed = entry;
+        requestLayout();
+        invalidate();
+    }
+
+    @Override
+    protected void onTextChanged(CharSequence text, int start, int lengthBefore, int lengthAfter) {
+        super.onTextChanged(text, start, lengthBefore, lengthAfter);
+        if (mPrecomputed != null) {
+            // TextView自己没有创建过Layout 不会主动重新测量
+            mPrecomputed = null;
+            requestLayout();
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final JToastTextLayouts.Entry entry = mPrecomputed;
+        if (entry != null && !fits(entry, widthMeasureSpec)) {
+            mPrecomputed = null;
+        }
+        if (mPrecomputed == null) {
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            return;
+        }
+        final int width = entry.desiredWidth + getPaddingLeft() + getPaddingRight();
+        final int height = entry.layout.getHeight() + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec),
+                resolveSize(height, heightMeasureSpec));
+    }
+
+    /**
+     * TextView的断行是否与entry一致: 字体大小相同(之后可能改过字体缩放) 并且不需要换行或者在相同宽度换行
+     */
+    private boolean fits(JToastTextLayouts.Entry entry, int widthMeasureSpec) {
+        if (MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.UNSPECIFIED
+                || entry.layout.getPaint().getTextSize() != getTextSize()) {
+            return false;
+        }
+        final int available = MeasureSpec.getSize(widthMeasureSpec)
+                - getPaddingLeft() - getPaddingRight();
+        return entry.desiredWidth <= available || entry.layout.getWidth() == available;
+    }
+
+    @Override
+    public int getBaseline() {
+        final JToastTextLayouts.Entry entry = mPrecomputed;
+        if (entry == null) {
+            return super.getBaseline();
+        }
+        return getPaddingTop() + entry.layout.getLineBaseline(0);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        final JToastTextLayouts.Entry entry = mPrecomputed;
+        if (entry == null) {
+            super.onDraw(canvas);
+            return;
+        }
+        final StaticLayout layout = entry.layout;
+        final TextPaint paint = layout.getPaint();
+        paint.setColor(getCurrentTextColor());
+        paint.drawableState = getDrawableState();
+        canvas.save();
+        canvas.translate(getPaddingLeft(), getPaddingTop());
+        layout.draw(canvas);
+        canvas.restore();
+    }
+}
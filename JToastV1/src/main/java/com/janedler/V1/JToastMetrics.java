@@ -0,0 +1,263 @@
+package com.janedler.V1;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @author janedler
+ * @ClassName: com.janedler.V1.JToastMetrics
+ * @Description: JToast性能指标 通过{@link #setListener(Listener)}注册监听(例如{@link Recorder})
+ * <p/>
+ * 没有注册监听时不做任何计时和统计 热路径上只读取一个volatile字段
+ */
+public final class JToastMetrics {
+
+    static volatile JToastMetrics.Listener sListener;
+
+    private JToastMetrics() {
+    }
+
+    /**
+     * 设置监听 传入null停止统计
+     */
+    public static void setListener(JToastMetrics.Listener listener) {
+        sListener = listener;
+    }
+
+    public static JToastMetrics.Listener getListener() {
+        return sListener;
+    }
+
+    /**
+     * JToast事件监听 所有方法默认为空实现
+     * <p/>
+     * 回调不会切换到主线程: 它们在触发事件的线程上同步调用, 其中onEnqueued, onCoalesced, onShown和
+     * onDismissed还持有JToastManager的锁。实现必须是线程安全的并尽快返回, 不能在回调中显示或取消Toast
+     */
+    public static abstract class Listener {
+        /**
+         * Toast进入队列 在调用{@link JToast#show()}的线程持有锁时回调
+         *
+         * @param queueDepth 入队后的队列长度
+         */
+        public void onEnqueued(int queueDepth) {
+            // empty
+        }
+
+        /**
+         * Toast被合并到了队列中相同的Toast上 在调用{@link JToast#show()}的线程持有锁时回调
+         *
+         * @see JToastManager#setCoalesceMode(int)
+         */
+        public void onCoalesced() {
+            // empty
+        }
+
+        /**
+         * Toast被丢弃 释放锁之后在导致丢弃的线程回调 通常是调用{@link JToast#show()}的线程
+         *
+         * @param reason {@link JToastManager#SHED_RATE_LIMITED}, {@link JToastManager#SHED_QUEUE_FULL}
+         *               或{@link JToastManager#SHED_DISPLACED}
+         */
+        public void onShed(int reason) {
+            // empty
+        }
+
+        /**
+         * Toast开始显示 持有锁时回调: 通道空闲时在调用{@link JToast#show()}的线程,
+         * 否则在前一个Toast超时的主线程
+         *
+         * @param latencyMs 从入队到显示的时间
+         */
+        public void onShown(long latencyMs) {
+            // empty
+        }
+
+        /**
+         * Toast隐藏 持有锁时回调: 超时在主线程, 被新的Toast替换或取消时在调用方的线程
+         *
+         * @param requestedMs 设置的显示时间
+         * @param visibleMs   实际的显示时间
+         */
+        public void onDismissed(long requestedMs, long visibleMs) {
+            // empty
+        }
+
+        /**
+         * Toast排到显示时inflate布局的耗时 使用备用布局时不会回调。在inflate的线程回调: 通常是
+         * 主线程, {@link JToast#prewarm(android.content.Context)}时是它的后台线程
+         */
+        public void onInflated(long nanos) {
+            // empty
+        }
+    }
+
+    /**
+     * 记录计数和延迟分布的监听 可以在任意线程读取
+     */
+    public static class Recorder extends JToastMetrics.Listener {
+        private final AtomicLong mEnqueued = new AtomicLong();
+        private final AtomicLong mCoalesced = new AtomicLong();
+        private final AtomicLong mShed = new AtomicLong();
+        private final AtomicLong mShown = new AtomicLong();
+
+        private final JToastMetrics.Histogram mQueueDepth = new JToastMetrics.Histogram();
+        private final JToastMetrics.Histogram mShowLatency = new JToastMetrics.Histogram();
+        private final JToastMetrics.Histogram mVisibleTime = new JToastMetrics.Histogram();
+        private final JToastMetrics.Histogram mVisibleOvershoot = new JToastMetrics.Histogram();
+        private final JToastMetrics.Histogram mInflateTime = new JToastMetrics.Histogram();
+
+        @Override
+        public void onEnqueued(int queueDepth) {
+            mEnqueued.incrementAndGet();
+            mQueueDepth.record(queueDepth);
+        }
+
+        @Override
+        public void onCoalesced() {
+            mCoalesced.incrementAndGet();
+        }
+
+        @Override
+        public void onShed(int reason) {
+            mShed.incrementAndGet();
+        }
+
+        @Override
+        public void onShown(long latencyMs) {
+            mShown.incrementAndGet();
+            mShowLatency.record(latencyMs);
+        }
+
+        @Override
+        public void onDismissed(long requestedMs, long visibleMs) {
+            mVisibleTime.record(visibleMs);
+            mVisibleOvershoot.record(Math.max(0, visibleMs - requestedMs));
+        }
+
+        @Override
+        public void onInflated(long nanos) {
+            mInflateTime.record(nanos / 1000);
+        }
+
+        public long getEnqueuedCount() {
+            return mEnqueued.get();
+        }
+
+        public long getCoalescedCount() {
+            return mCoalesced.get();
+        }
+
+        /**
+         * 被限流 拒绝或挤出队列的Toast数量
+         */
+        public long getShedCount() {
+            return mShed.get();
+        }
+
+        public long getShownCount() {
+            return mShown.get();
+        }
+
+        /**
+         * 每次入队时的队列长度
+         */
+        public JToastMetrics.Histogram getQueueDepth() {
+            return mQueueDepth;
+        }
+
+        /**
+         * 从入队到显示的时间 单位毫秒
+         */
+        public JToastMetrics.Histogram getShowLatency() {
+            return mShowLatency;
+        }
+
+        /**
+         * 实际显示时间 单位毫秒
+         */
+        public JToastMetrics.Histogram getVisibleTime() {
+            return mVisibleTime;
+        }
+
+        /**
+         * 实际显示时间超出设置时间的部分 单位毫秒
+         */
+        public JToastMetrics.Histogram getVisibleOvershoot() {
+            return mVisibleOvershoot;
+        }
+
+        /**
+         * inflate耗时 单位微秒
+         */
+        public JToastMetrics.Histogram getInflateTime() {
+            return mInflateTime;
+        }
+    }
+
+    /**
+     * 无锁直方图 按2的幂分桶: 第i个桶统计[2^(i-1), 2^i)之间的值 第0个桶统计<=0的值
+     * 百分位数返回所在桶的上界
+     */
+    public static final class Histogram {
+        private static final int BUCKET_COUNT = 64;
+
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mSum = new AtomicLong();
+        private final AtomicLong mMax = new AtomicLong();
+
+        public void record(long value) {
+            final int bucket = value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+            mBuckets.incrementAndGet(Math.min(bucket, BUCKET_COUNT - 1));
+            mCount.incrementAndGet();
+            mSum.addAndGet(value);
+            long max;
+            while (value > (max = mMax.get()) && !mMax.compareAndSet(max, value)) {
+                // 重试
+            }
+        }
+
+        public long getCount() {
+            return mCount.get();
+        }
+
+        public long getMax() {
+            return mMax.get();
+        }
+
+        public double getMean() {
+            final long count = mCount.get();
+            return count == 0 ? 0 : (double) mSum.get() / count;
+        }
+
+        /**
+         * @param percentile 0到100之间
+         * @return 该百分位数所在桶的上界
+         */
+        public long getPercentile(double percentile) {
+            final long count = mCount.get();
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = (long) Math.ceil(count * percentile / 100d);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += mBuckets.get(i);
+                if (seen >= rank) {
+                    return i == 0 ? 0 : Math.min((1L << i) - 1, mMax.get());
+                }
+            }
+            return mMax.get();
+        }
+
+        public void reset() {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                mBuckets.set(i, 0);
+            }
+            mCount.set(0);
+            mSum.set(0);
+            mMax.set(0);
+        }
+    }
+}
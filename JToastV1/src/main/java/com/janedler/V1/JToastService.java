@@ -1,8 +1,18 @@
 package com.janedler.V1;
 
-import android.util.Log;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+import android.view.Choreographer;
 
-import java.util.concurrent.LinkedBlockingDeque;
+import com.janedler.core.Clock;
+import com.janedler.core.OpQueue;
+import com.janedler.core.Scheduler;
+import com.janedler.core.ToastLanes;
+import com.janedler.core.ToastRecord;
+import com.janedler.core.ToastScheduler;
 
 
 /**
@@ -10,12 +20,58 @@ import java.util.concurrent.LinkedBlockingDeque;
  * @ClassName: com.janedler.V1.JToastService
  * @Description: CFPToast服务类  里面维护CFPToast队列
  * @date 2016/3/9 12:51
+ * <p/>
+ * 队列 超时和状态切换都由与Android无关的{@link ToastScheduler}完成, 这里只为它提供主线程
+ * Handler上的定时消息和SystemClock。不会创建线程, 也不会有线程sleep。
+ * <p/>
+ * 每个通道(默认按gravity区分 见{@link JToast#setChannel(Object)})有自己的ToastScheduler:
+ * 自己的队列 容量和超时, 不同通道的Toast同时显示在各自的位置, 一个通道的大量Toast不会拖延其它通道。
+ * <p/>
+ * ToastScheduler本身不是线程安全的: 所有对它的调用(包括超时消息)都在{@link #mLock}下进行,
+ * JToastManager的合并索引和限流器也由同一把锁保护。
+ * <p>
+ * 锁内只记录显示/隐藏操作: 它们被放进无锁的{@link OpQueue}, 由主线程在下一帧开始时一次执行完。
+ * 不管有多少线程同时弹Toast, 主线程每帧最多被唤醒一次。
  */
 
 public class JToastService {
-    private Thread mDispatchThread;
 
-    private boolean isWhiling = false; //判断是否在循环Queue里面的数据
+    private static final int MSG_TIMEOUT = 0;
+    private static final int MSG_DRAIN = 1;
+
+    /**
+     * 主线程上的操作 见{@link #postToUi(int, JToast.ToastEntity, int)}
+     */
+    static final int UI_SHOW = 0;
+    static final int UI_HIDE = 1;
+    static final int UI_SUSPEND = 2;
+    static final int UI_RELEASE_WINDOW = 3;
+
+    private static final Clock UPTIME_CLOCK = new Clock() {
+        @Override
+        public long uptimeMillis() {
+            return SystemClock.uptimeMillis();
+        }
+    };
+
+    final Object mLock = new Object();
+
+    private final Handler mHandler;
+
+    private final ToastLanes mLanes;
+
+    private final Scheduler mTimeouts;
+
+    /**
+     * 等待主线程执行的显示/隐藏操作
+     */
+    private final OpQueue mUiOps;
+
+    /**
+     * 主线程的Choreographer 第一次在主线程执行操作时获取 API 16以下为null
+     */
+    private volatile Choreographer mChoreographer;
+    private Choreographer.FrameCallback mDrainFrame;
 
     private static class JToastServiceHolder {
         private static JToastService instance = new JToastService();
@@ -26,57 +82,204 @@ public class JToastService {
     }
 
     private JToastService() {
-        Log.e("TAG", "initial CFPToastService");
-    }
+        mHandler = new Handler(Looper.getMainLooper(), new Handler.Callback() {
+            @Override
+            public boolean handleMessage(Message message) {
+                if (message.what == MSG_DRAIN) {
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN
+                            && mChoreographer == null) {
+                        //Choreographer和Looper绑定 只能在主线程获取
+                        mDrainFrame = new Choreographer.FrameCallback() {
+                            @Override
+                            public void doFrame(long frameTimeNanos) {
+                                drainUiOps();
+                            }
+                        };
+                        mChoreographer = Choreographer.getInstance();
+                    }
+                    drainUiOps();
+                    return true;
+                }
+                if (message.what != MSG_TIMEOUT) {
+                    return false;
+                }
+                final boolean traced = JToastTrace.beginSection(JToastTrace.SECTION_TIMEOUT);
+                try {
+                    synchronized (mLock) {
+                        ((Runnable) message.obj).run();
+                    }
+                } finally {
+                    JToastTrace.endSection(traced);
+                }
+                return true;
+            }
+        });
+        mUiOps = new OpQueue(new OpQueue.Target() {
+            @Override
+            public void apply(int op, Object subject, Object extra, int arg) {
+                if (op == UI_RELEASE_WINDOW) {
+                    //subject是被丢弃的通道
+                    JToastWindow.release(subject);
+                    return;
+                }
+                final JToast.ToastEntity entity = (JToast.ToastEntity) subject;
+                switch (op) {
+                    case UI_SHOW:
+                        entity.handleShow();
+                        break;
+                    case UI_HIDE:
+                        entity.handleHide();
+                        entity.releaseLayout();
+                        //arg是隐藏时的mShowGeneration 不相等说明同一帧内又被加入了队列 不能回收
+                        if (arg == entity.mShowGeneration) {
+                            JToast.recycle(entity);
+                        }
+                        break;
+                    case UI_SUSPEND:
+                        //保留mNextView 重新排到时再显示
+                        entity.handleHide();
+                        break;
+                }
+            }
+        }, new OpQueue.Owner() {
+            @Override
+            public boolean isOwnerThread() {
+                return Looper.myLooper() == mHandler.getLooper();
+            }
 
-    private Thread createToastQueueThread() {
-        Thread dispatchThread = new JToastService.DispatchToastQueueThread();
-        dispatchThread.setPriority(Thread.MAX_PRIORITY);
-        return dispatchThread;
+            @Override
+            public void requestDrain() {
+                final Choreographer choreographer = mChoreographer;
+                if (choreographer != null) {
+                    //任何线程都可以向Choreographer post
+                    choreographer.postFrameCallback(mDrainFrame);
+                } else {
+                    mHandler.sendEmptyMessage(MSG_DRAIN);
+                }
+            }
+        });
+        mTimeouts = new Scheduler() {
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+                mHandler.sendMessageDelayed(mHandler.obtainMessage(MSG_TIMEOUT, task), delayMillis);
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+                mHandler.removeMessages(MSG_TIMEOUT, task);
+            }
+        };
+        mLanes = new ToastLanes(new ToastLanes.Factory() {
+            @Override
+            public ToastScheduler create(Object key) {
+                //所有通道共用一个Handler 每个ToastScheduler有自己的超时任务
+                final ToastScheduler lane = new ToastScheduler(UPTIME_CLOCK, mTimeouts, mDisplay);
+                lane.setListener(mSchedulerListener);
+                return lane;
+            }
+
+            @Override
+            public void onEvicted(Object key, ToastScheduler lane) {
+                //空闲的通道没有定时消息 只需要移除复用的窗口 排在它最后一个Toast的隐藏操作之后
+                mUiOps.postDeferred(UI_RELEASE_WINDOW, lane, 0);
+            }
+        });
     }
 
-    private class DispatchToastQueueThread extends Thread {
+    /**
+     * 显示和隐藏Toast 在mLock下被ToastScheduler调用 Toast所在的通道由{@link JToast.ToastEntity#mLane}记录
+     */
+    private final ToastScheduler.Display mDisplay = new ToastScheduler.Display() {
+        @Override
+        public boolean show(ToastRecord record) {
+            final JToast.ToastEntity entity = (JToast.ToastEntity) record;
+            JToastManager.getInstance().removeIndexLocked(entity);
+            entity.show();
+            //WindowManager的Toast没有进入动画 立即开始计时
+            entity.mLane.onShown(entity);
+            return true;
+        }
 
         @Override
-        public void run() {
-            dispatchQueueToast();
+        public boolean dismiss(ToastRecord record, int event) {
+            final JToast.ToastEntity entity = (JToast.ToastEntity) record;
+            if (record != entity.mLane.getCurrent()) {
+                //还没有显示就被移出了队列
+                JToastManager.getInstance().onDisplacedLocked(entity, event);
+                return false;
+            }
+            if (event == ToastScheduler.EVENT_PREEMPTED) {
+                //被更重要的Toast打断 只移除窗口 保留View等重新排到时再显示
+                entity.suspend();
+            } else {
+                entity.hide();
+            }
+            //没有退出动画 不需要等待
+            return false;
         }
+    };
 
-        /**
-         * 对queue里面的数据进行分发处理
-         */
-        private synchronized void dispatchQueueToast() {
-            LinkedBlockingDeque<JToast.ToastEntity> queue = JToastManager.getInstance().getQueue();
-            Log.e("Thread", "mQueue size " + queue.size());
-            try {
-                JToast.ToastEntity entity = null;
-                //如果queue里面的数据已处理完毕 线程就退出
-                while (queue != null && !queue.isEmpty() && (entity = queue.poll()) != null) {
-                    isWhiling = true;
-                    Log.e("Thread", "CFPToastService is running");
-                    entity.show();
-                    Thread.sleep(entity.mDuration);
-                    entity.hide();
-                }
-                isWhiling = false;
-                Log.e("TAG", "Thread is completed");
-            } catch (Exception e) {
-                e.printStackTrace();
+    private final ToastScheduler.Listener mSchedulerListener = new ToastScheduler.Listener() {
+        @Override
+        public void onEnqueued(ToastRecord record, int queueDepth) {
+            JToastTrace.record(JToastTrace.EVENT_ENQUEUE, queueDepth);
+            final JToastMetrics.Listener metrics = JToastMetrics.sListener;
+            if (metrics != null) {
+                metrics.onEnqueued(queueDepth);
             }
+        }
+
+        @Override
+        public void onShown(ToastRecord record) {
+            final JToastMetrics.Listener metrics = JToastMetrics.sListener;
+            if (metrics != null) {
+                metrics.onShown(record.getShownTime() - record.getEnqueueTime());
+            }
+        }
 
+        @Override
+        public void onTimeout(ToastRecord record) {
+            JToastTrace.record(JToastTrace.EVENT_TIMEOUT, 0);
+        }
+
+        @Override
+        public void onDismissed(ToastRecord record) {
+            final JToastMetrics.Listener metrics = JToastMetrics.sListener;
+            if (metrics != null && record.getShownTime() > 0) {
+                metrics.onDismissed(record.getDurationMs(),
+                        SystemClock.uptimeMillis() - record.getShownTime());
+            }
         }
+    };
 
+    /**
+     * 在下一帧开始时在主线程执行op 即使当前就在主线程也不会立即执行, 因为调用方通常持有mLock
+     *
+     * @param op  {@link #UI_SHOW}, {@link #UI_HIDE}或{@link #UI_SUSPEND}
+     * @param arg UI_HIDE时为{@link JToast.ToastEntity#mShowGeneration} 其它为0
+     */
+    void postToUi(int op, JToast.ToastEntity entity, int arg) {
+        mUiOps.postDeferred(op, entity, arg);
     }
 
+    /**
+     * 执行所有等待中的显示/隐藏操作 必须在主线程调用
+     */
+    void drainUiOps() {
+        mUiOps.drain();
+    }
 
     /**
-     * 检查并通知CFPToastService开始工作
+     * 必须在mLock下调用
      */
-    public synchronized void notifiyAndCheckToastRuning() {
-        LinkedBlockingDeque<JToast.ToastEntity> queue = JToastManager.getInstance().getQueue();
-        if (mDispatchThread == null || !isWhiling && queue != null && !queue.isEmpty()) {
-            mDispatchThread = createToastQueueThread();
-            mDispatchThread.start();
-        }
+    ToastLanes getLanesLocked() {
+        return mLanes;
+    }
+
+    /**
+     * 以前用来通知服务开始分发, 现在入队时ToastScheduler会直接显示 保留只为兼容
+     */
+    @Deprecated
+    public void notifiyAndCheckToastRuning() {
     }
 }
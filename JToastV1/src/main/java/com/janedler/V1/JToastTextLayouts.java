@@ -0,0 +1,148 @@
+package com.janedler.V1;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.DisplayMetrics;
+import android.view.View;
+import android.widget.TextView;
+
+import com.janedler.core.TextLayoutCache;
+
+/**
+ * @author janedler
+ * @ClassName: com.janedler.V1.JToastTextLayouts
+ * @Description: 在后台线程提前计算Toast文本的StaticLayout(断行和测量) 主线程显示时由JToastMessageView
+ * 直接使用 最近的几条文本放在{@link TextLayoutCache}里 重复的文本只计算一次
+ * <p/>
+ * 按屏幕宽度的Toast窗口计算 实际宽度不一致或者还没算好时 JToastMessageView自己计算
+ */
+final class JToastTextLayouts {
+
+    private static final int MAX_CACHED_LAYOUTS = 16;
+
+    static final class Entry {
+        final StaticLayout layout;
+        /**
+         * 不换行时最宽段落的宽度 与TextView的测量方式一致
+         */
+        final int desiredWidth;
+
+        Entry(StaticLayout layout, int desiredWidth) {
+            this.layout = layout;
+            this.desiredWidth = desiredWidth;
+        }
+    }
+
+    /**
+     * ui_toast_layout的文字画笔和可用宽度 只在后台线程使用
+     */
+    private static final class Template {
+        final TextPaint paint;
+        final int width;
+        final int generation;
+
+        Template(TextPaint paint, int width, int generation) {
+            this.paint = paint;
+            this.width = width;
+            this.generation = generation;
+        }
+    }
+
+    private static final TextLayoutCache<Entry> sCache = new TextLayoutCache<>(MAX_CACHED_LAYOUTS);
+
+    /**
+     * 当前模板的文字大小和宽度 后台线程创建模板后设置, 查询缓存时使用
+     */
+    private static volatile float sTextSize;
+    private static volatile int sWidth;
+
+    private static Handler sWorker;
+    private static Template sTemplate;
+
+    private JToastTextLayouts() {
+    }
+
+    /**
+     * 在后台线程计算text的Layout 较短或者已经缓存的文本直接返回
+     */
+    static void precompute(Context context, final CharSequence text) {
+        if (!TextLayoutCache.shouldPrecompute(text) || get(text) != null) {
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        getWorker().post(new Runnable() {
+            @Override
+            public void run() {
+                build(appContext, text);
+            }
+        });
+    }
+
+    /**
+     * @return text已经算好的Layout 没有时返回null
+     */
+    static Entry get(CharSequence text) {
+        if (text == null) {
+            return null;
+        }
+        return sCache.get(text, sTextSize, sWidth);
+    }
+
+    /**
+     * 清空缓存的Layout
+     */
+    static void clear() {
+        sCache.clear();
+    }
+
+    private static synchronized Handler getWorker() {
+        if (sWorker == null) {
+            final HandlerThread thread = new HandlerThread("JToast-text",
+                    Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            sWorker = new Handler(thread.getLooper());
+        }
+        return sWorker;
+    }
+
+    private static void build(Context context, CharSequence text) {
+        if (get(text) != null) {
+            // 第一次计算完成前被重复提交
+            return;
+        }
+        final int generation = sCache.getGeneration();
+        final boolean traced = JToastTrace.beginSection(JToastTrace.SECTION_TEXT_LAYOUT);
+        try {
+            Template template = sTemplate;
+            if (template == null || template.generation != generation) {
+                template = sTemplate = createTemplate(context, generation);
+                sTextSize = template.paint.getTextSize();
+                sWidth = template.width;
+            }
+            // 每个Layout使用自己的画笔 颜色由JToastMessageView在主线程绘制时设置
+            final TextPaint paint = new TextPaint(template.paint);
+            final int desiredWidth = (int) Math.ceil(Layout.getDesiredWidth(text, paint));
+            // ui_toast_layout的行距和includeFontPadding都是TextView的默认值
+            final StaticLayout layout = new StaticLayout(text, paint, template.width,
+                    Layout.Alignment.ALIGN_NORMAL, 1f, 0f, true);
+            sCache.put(text, template.paint.getTextSize(), template.width, generation,
+                    new Entry(layout, desiredWidth));
+        } finally {
+            JToastTrace.endSection(traced);
+        }
+    }
+
+    private static Template createTemplate(Context context, int generation) {
+        final View view = JToast.inflateLayout(context);
+        final TextView message = (TextView) view.findViewById(R.id.message);
+        final DisplayMetrics display = context.getResources().getDisplayMetrics();
+        final int width = display.widthPixels - view.getPaddingLeft() - view.getPaddingRight()
+                - message.getPaddingLeft() - message.getPaddingRight();
+        return new Template(new TextPaint(message.getPaint()), Math.max(0, width), generation);
+    }
+}
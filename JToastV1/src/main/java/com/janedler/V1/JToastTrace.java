@@ -0,0 +1,144 @@
+package com.janedler.V1;
+
+import android.os.SystemClock;
+import android.support.v4.os.TraceCompat;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @author janedler
+ * @ClassName: com.janedler.V1.JToastTrace
+ * @Description: JToast热路径的跟踪 默认关闭
+ * <p/>
+ * 开启后enqueue, inflate, addView/removeView和超时隐藏会包在{@link android.os.Trace}的section里,
+ * 可以在systrace和Perfetto中看到; 每个事件压缩成一个long写入固定大小的环形缓冲区,
+ * 出现卡顿后可以通过{@link #dump()}导出。section名称都是常量, 事件都是数字, 导出之前不会拼接字符串。
+ * 关闭时每次调用只读取一个volatile字段
+ */
+public final class JToastTrace {
+
+    static final String SECTION_ENQUEUE = "JToast:enqueue";
+    static final String SECTION_INFLATE = "JToast:inflate";
+    static final String SECTION_ADD_VIEW = "JToast:addView";
+    static final String SECTION_REMOVE_VIEW = "JToast:removeView";
+    static final String SECTION_UPDATE_VIEW = "JToast:updateView";
+    static final String SECTION_TIMEOUT = "JToast:timeout";
+    static final String SECTION_TEXT_LAYOUT = "JToast:textLayout";
+
+    public static final int EVENT_ENQUEUE = 1;
+    public static final int EVENT_SHOW = 2;
+    public static final int EVENT_HIDE = 3;
+    public static final int EVENT_TIMEOUT = 4;
+    public static final int EVENT_COALESCE = 5;
+    public static final int EVENT_SHED = 6;
+    public static final int EVENT_ADD_VIEW = 7;
+    public static final int EVENT_REMOVE_VIEW = 8;
+    public static final int EVENT_INFLATE = 9;
+
+    private static final String[] EVENT_NAMES = {
+            "?", "enqueue", "show", "hide", "timeout", "coalesce", "shed", "addView", "removeView",
+            "inflate"
+    };
+
+    /**
+     * 保留的事件数量 必须是2的幂
+     */
+    private static final int BUFFER_SIZE = 512;
+
+    // 事件格式: | 40位 uptime毫秒 | 8位 事件 | 16位 参数 |
+    private static final int ARG_BITS = 16;
+    private static final int EVENT_BITS = 8;
+    private static final long ARG_MASK = (1L << ARG_BITS) - 1;
+    private static final long EVENT_MASK = (1L << EVENT_BITS) - 1;
+
+    private static volatile boolean sEnabled;
+
+    private static final AtomicLongArray sBuffer = new AtomicLongArray(BUFFER_SIZE);
+    private static final AtomicInteger sNext = new AtomicInteger();
+
+    private JToastTrace() {
+    }
+
+    /**
+     * 开启或关闭跟踪
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * 打开一个trace section 返回是否真的打开了, 交给配对的{@link #endSection(boolean)}:
+     * 两次调用之间切换跟踪开关也不会留下不配对的section
+     */
+    static boolean beginSection(String name) {
+        if (!sEnabled) {
+            return false;
+        }
+        TraceCompat.beginSection(name);
+        return true;
+    }
+
+    /**
+     * 关闭{@link #beginSection(String)}打开的section
+     */
+    static void endSection(boolean began) {
+        if (began) {
+            TraceCompat.endSection();
+        }
+    }
+
+    /**
+     * 记录一个事件 arg会被限制在16位以内 例如队列长度
+     */
+    static void record(int event, int arg) {
+        if (!sEnabled) {
+            return;
+        }
+        final long packed = (SystemClock.uptimeMillis() << (EVENT_BITS + ARG_BITS))
+                | ((event & EVENT_MASK) << ARG_BITS)
+                | (Math.min(Math.max(arg, 0), ARG_MASK));
+        sBuffer.lazySet(sNext.getAndIncrement() & (BUFFER_SIZE - 1), packed);
+    }
+
+    /**
+     * 清空已记录的事件
+     */
+    public static void clear() {
+        for (int i = 0; i < BUFFER_SIZE; i++) {
+            sBuffer.set(i, 0);
+        }
+    }
+
+    /**
+     * 导出已记录的事件 按时间顺序每行一个: {@code <uptime毫秒> <事件> <参数>}
+     */
+    public static String dump() {
+        final StringWriter out = new StringWriter();
+        dump(new PrintWriter(out));
+        return out.toString();
+    }
+
+    public static void dump(PrintWriter writer) {
+        final int next = sNext.get();
+        for (int i = 0; i < BUFFER_SIZE; i++) {
+            final long packed = sBuffer.get((next + i) & (BUFFER_SIZE - 1));
+            if (packed == 0) {
+                continue;
+            }
+            final int event = (int) ((packed >>> ARG_BITS) & EVENT_MASK);
+            writer.print(packed >>> (EVENT_BITS + ARG_BITS));
+            writer.print(' ');
+            writer.print(event < EVENT_NAMES.length ? EVENT_NAMES[event] : String.valueOf(event));
+            writer.print(' ');
+            writer.println(packed & ARG_MASK);
+        }
+        writer.flush();
+    }
+}
@@ -0,0 +1,146 @@
+package com.janedler.V1;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.view.WindowManager;
+import android.widget.FrameLayout;
+
+import java.util.HashMap;
+
+/**
+ * @author janedler
+ * @ClassName: com.janedler.V1.JToastWindow
+ * @Description: 连续显示的Toast共用的窗口
+ * <p/>
+ * 每次addView/removeView都是一次跨进程调用 WindowManagerService要为它创建和销毁surface, 这是V1 Toast
+ * 最耗时的部分。开启窗口复用后(见{@link JToastManager#setWindowReuse(long)}) 每个通道只有一个窗口:
+ * 换Toast时只替换窗口里的View 位置变化时用updateViewLayout原地更新, 空闲超过设定时间后才移除窗口。
+ * <p/>
+ * 窗口的进入/退出动画只在添加和移除窗口时播放。只在主线程使用
+ */
+final class JToastWindow {
+
+    /**
+     * 每个通道的窗口 key是{@link JToast.ToastEntity#mLane} 通道空闲被丢弃后由{@link #release(Object)}移除
+     */
+    private static final HashMap<Object, JToastWindow> sWindows = new HashMap<>();
+
+    /**
+     * 空闲多久后移除窗口 0表示不复用窗口
+     */
+    static volatile long sIdleGraceMs;
+
+    private final WindowManager mWM;
+    private final FrameLayout mHost;
+    private final WindowManager.LayoutParams mParams = new WindowManager.LayoutParams();
+    private boolean mAttached;
+    private View mContent;
+
+    private final Runnable mDetach = new Runnable() {
+        @Override
+        public void run() {
+            detach();
+        }
+    };
+
+    private JToastWindow(Context context) {
+        mWM = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        mHost = new FrameLayout(context);
+    }
+
+    /**
+     * 返回key对应的窗口 没有开启窗口复用时返回null
+     *
+     * @param context Application Context 窗口会一直持有它
+     */
+    static JToastWindow obtain(Object key, Context context) {
+        if (sIdleGraceMs <= 0) {
+            return null;
+        }
+        JToastWindow window = sWindows.get(key);
+        if (window == null) {
+            window = new JToastWindow(context);
+            sWindows.put(key, window);
+        }
+        return window;
+    }
+
+    /**
+     * key对应的通道已经被丢弃 立即移除它的窗口, 不再等待空闲时间
+     */
+    static void release(Object key) {
+        final JToastWindow window = sWindows.remove(key);
+        if (window != null) {
+            window.mHost.removeCallbacks(window.mDetach);
+            //还有内容时(不应该发生) 由之后的hide()移除
+            window.detach();
+        }
+    }
+
+    /**
+     * 在窗口中显示content 窗口已经添加时只更新位置
+     */
+    void show(View content, WindowManager.LayoutParams params) {
+        mHost.removeCallbacks(mDetach);
+        if (mContent != content) {
+            if (mContent != null) {
+                mHost.removeView(mContent);
+            }
+            final ViewParent parent = content.getParent();
+            if (parent instanceof ViewGroup) {
+                ((ViewGroup) parent).removeView(content);
+            }
+            mHost.addView(content);
+            mContent = content;
+        }
+        // copyFrom返回变化了的字段 没有变化时不需要跨进程更新
+        final int changes = mParams.copyFrom(params);
+        if (!mAttached) {
+            final boolean traced = JToastTrace.beginSection(JToastTrace.SECTION_ADD_VIEW);
+            try {
+                JToastTrace.record(JToastTrace.EVENT_ADD_VIEW, 0);
+                mWM.addView(mHost, mParams);
+            } finally {
+                JToastTrace.endSection(traced);
+            }
+            mAttached = true;
+        } else if (changes != 0) {
+            final boolean traced = JToastTrace.beginSection(JToastTrace.SECTION_UPDATE_VIEW);
+            try {
+                mWM.updateViewLayout(mHost, mParams);
+            } finally {
+                JToastTrace.endSection(traced);
+            }
+        }
+    }
+
+    /**
+     * 把content从窗口中移除 窗口空闲{@link #sIdleGraceMs}后移除 期间有新的Toast就直接复用
+     */
+    void hide(View content) {
+        if (mContent != content) {
+            return;
+        }
+        mHost.removeView(content);
+        mContent = null;
+        if (mAttached) {
+            mHost.postDelayed(mDetach, Math.max(0, sIdleGraceMs));
+        }
+    }
+
+    private void detach() {
+        if (!mAttached || mContent != null) {
+            return;
+        }
+        final boolean traced = JToastTrace.beginSection(JToastTrace.SECTION_REMOVE_VIEW);
+        try {
+            JToastTrace.record(JToastTrace.EVENT_REMOVE_VIEW, 0);
+            mWM.removeView(mHost);
+        } finally {
+            JToastTrace.endSection(traced);
+        }
+        mAttached = false;
+    }
+}
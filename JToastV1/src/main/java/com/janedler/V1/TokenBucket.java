@@ -0,0 +1,41 @@
+package com.janedler.V1;
+
+/**
+ * @author janedler
+ * @ClassName: com.janedler.V1.TokenBucket
+ * @Description: 令牌桶限流 每个Toast消耗一个令牌 令牌按固定速率补充 最多攒capacity个
+ * <p/>
+ * 非线程安全 由JToastManager在锁内调用
+ */
+final class TokenBucket {
+
+    private final int mCapacity;
+    private final float mPermitsPerMs;
+    private float mTokens;
+    private long mLastRefillTime;
+
+    TokenBucket(int capacity, float permitsPerSecond, long now) {
+        mCapacity = capacity;
+        mPermitsPerMs = permitsPerSecond / 1000f;
+        mTokens = capacity;
+        mLastRefillTime = now;
+    }
+
+    /**
+     * 尝试消耗一个令牌
+     *
+     * @param now 当前时间 单位毫秒
+     * @return 没有令牌时返回false
+     */
+    boolean tryAcquire(long now) {
+        if (now > mLastRefillTime) {
+            mTokens = Math.min(mCapacity, mTokens + (now - mLastRefillTime) * mPermitsPerMs);
+            mLastRefillTime = now;
+        }
+        if (mTokens < 1f) {
+            return false;
+        }
+        mTokens -= 1f;
+        return true;
+    }
+}
@@ -0,0 +1,189 @@
+package com.janedler.V1;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.view.Display;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.WindowManager;
+
+import com.janedler.core.ToastRecord;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs JToastService's main-thread operations on the host JVM.
+ * <p>
+ * Handler, Looper and Choreographer are inert android.jar stubs here, so every call counts as
+ * being made on the main thread and nothing is applied until the test drains the frame's
+ * operations with {@link JToastService#drainUiOps()}.
+ */
+public class JToastServiceTest {
+
+    /**
+     * Logs the views added to and removed from the window.
+     */
+    private static class FakeWindowManager implements WindowManager {
+        final List<View> added = new ArrayList<>();
+        final List<View> removed = new ArrayList<>();
+
+        @Override
+        public void addView(View view, ViewGroup.LayoutParams params) {
+            added.add(view);
+        }
+
+        @Override
+        public void updateViewLayout(View view, ViewGroup.LayoutParams params) {
+        }
+
+        @Override
+        public void removeView(View view) {
+            removed.add(view);
+        }
+
+        @Override
+        public void removeViewImmediate(View view) {
+        }
+
+        @Override
+        public Display getDefaultDisplay() {
+            return null;
+        }
+    }
+
+    private static class FakeContext extends ContextWrapper {
+        final FakeWindowManager windowManager = new FakeWindowManager();
+
+        FakeContext() {
+            super(null);
+        }
+
+        @Override
+        public Context getApplicationContext() {
+            return this;
+        }
+
+        @Override
+        public Object getSystemService(String name) {
+            return Context.WINDOW_SERVICE.equals(name) ? windowManager : null;
+        }
+    }
+
+    /**
+     * A view set with {@link JToast#setView(View)}.
+     */
+    private static class CustomView extends View {
+        private final Context mContext;
+
+        CustomView(Context context) {
+            super(context);
+            mContext = context;
+        }
+
+        @Override
+        public Context getContext() {
+            return mContext;
+        }
+    }
+
+    @Test
+    public void hideThenReshowInOneFrameShowsTheViewAgain() {
+        final JToastManager manager = JToastManager.getInstance();
+        final JToastService service = JToastService.getInstance();
+        final FakeContext context = new FakeContext();
+        final View view = new CustomView(context);
+        final JToast.ToastEntity entity = new JToast.ToastEntity();
+        // A lane of its own
+        entity.mChannel = new Object();
+        entity.mDuration = 2000;
+        entity.mNextView = view;
+        assertEquals(JToastManager.RESULT_QUEUED, manager.enqueueToastForResult(entity));
+        service.drainUiOps();
+        assertSame(view, entity.mView);
+
+        // Times out and is shown again before the next frame applies the hide
+        synchronized (service.mLock) {
+            entity.mLane.timeout(entity);
+        }
+        entity.mNextView = view;
+        assertEquals(JToastManager.RESULT_QUEUED, manager.enqueueToastForResult(entity));
+        service.drainUiOps();
+
+        assertEquals(ToastRecord.STATE_SHOWN, entity.getState());
+        assertSame(view, entity.mView);
+        assertEquals(2, context.windowManager.added.size());
+        assertSame(view, context.windowManager.added.get(1));
+    }
+
+    @Test
+    public void onlyTheLatestHideRecyclesThePooledToast() {
+        final JToastManager manager = JToastManager.getInstance();
+        final JToastService service = JToastService.getInstance();
+        final FakeContext context = new FakeContext();
+        final View view = new CustomView(context);
+        final JToast.ToastEntity entity = JToast.newSummaryEntity(context);
+        entity.mDefaultLayout = false;
+        entity.mRecyclable = true;
+        entity.mChannel = new Object();
+        entity.mDuration = 2000;
+        entity.mNextView = view;
+        manager.enqueueToastForResult(entity);
+        service.drainUiOps();
+
+        synchronized (service.mLock) {
+            entity.mLane.timeout(entity);
+        }
+        manager.enqueueToastForResult(entity);
+        service.drainUiOps();
+        // Still in use, not back in the pool
+        assertTrue(entity.mRecyclable);
+        assertSame(view, entity.mView);
+
+        synchronized (service.mLock) {
+            entity.mLane.timeout(entity);
+        }
+        service.drainUiOps();
+        assertFalse(entity.mRecyclable);
+    }
+
+    @Test
+    public void droppingAnIdleLaneRemovesItsWindow() {
+        final JToastManager manager = JToastManager.getInstance();
+        final JToastService service = JToastService.getInstance();
+        final FakeContext context = new FakeContext();
+        manager.setWindowReuse(60000);
+        try {
+            final JToast.ToastEntity entity = new JToast.ToastEntity();
+            entity.mChannel = new Object();
+            entity.mDuration = 2000;
+            entity.mNextView = new CustomView(context);
+            manager.enqueueToastForResult(entity);
+            service.drainUiOps();
+            synchronized (service.mLock) {
+                entity.mLane.timeout(entity);
+            }
+            service.drainUiOps();
+            // Kept for the next toast of the lane
+            assertEquals(1, context.windowManager.added.size());
+            assertTrue(context.windowManager.removed.isEmpty());
+
+            // A toast for another channel drops the idle lane
+            final JToast.ToastEntity other = new JToast.ToastEntity();
+            other.mChannel = new Object();
+            other.mDuration = 2000;
+            manager.enqueueToastForResult(other);
+            service.drainUiOps();
+            assertEquals(context.windowManager.added, context.windowManager.removed);
+        } finally {
+            manager.setWindowReuse(0);
+        }
+    }
+}
@@ -1,23 +1,35 @@
 package com.janedler.V2;
 
 import android.content.Context;
+import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.provider.Settings;
 import android.support.annotation.IntDef;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.StringRes;
 import android.support.design.widget.CoordinatorLayout;
-import android.view.LayoutInflater;
+import android.support.v4.view.ViewCompat;
+import android.support.v4.view.ViewPropertyAnimatorCompat;
+import android.support.v4.view.ViewPropertyAnimatorListenerAdapter;
+import android.support.v4.view.animation.FastOutSlowInInterpolator;
+import android.view.Gravity;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewParent;
+import android.view.animation.Interpolator;
 import android.widget.FrameLayout;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Created by janedler on 2016/11/23.
@@ -50,12 +62,27 @@ public class JToast {
          * Indicates that the JToast was dismissed from a new JToast being shown.
          */
         public static final int DISMISS_EVENT_CONSECUTIVE = 4;
+        /**
+         * Indicates that the JToast was collapsed into a summary JToast before it was shown.
+         *
+         * @see JToast#setAggregation(int, long, JToast.AggregationCallback)
+         */
+        public static final int DISMISS_EVENT_AGGREGATED = 5;
+        /**
+         * Indicates that the JToast was taken off the screen by a more important one. It is
+         * shown again afterwards, so this is never passed to
+         * {@link #onDismissed(JToast, int)}; it is only reported to {@link JToastMetrics}.
+         *
+         * @see JToast#setPriority(int)
+         */
+        public static final int DISMISS_EVENT_PREEMPTED = 6;
 
         /**
          * @hide
          */
         @IntDef({DISMISS_EVENT_SWIPE, DISMISS_EVENT_ACTION, DISMISS_EVENT_TIMEOUT,
-                DISMISS_EVENT_MANUAL, DISMISS_EVENT_CONSECUTIVE})
+                DISMISS_EVENT_MANUAL, DISMISS_EVENT_CONSECUTIVE, DISMISS_EVENT_AGGREGATED,
+                DISMISS_EVENT_PREEMPTED})
         @Retention(RetentionPolicy.SOURCE)
         public @interface DismissEvent {
         }
@@ -67,8 +94,9 @@ public class JToast {
          * @param JToast The JToast which has been dismissed.
          * @param event     The event which caused the dismissal. One of either:
          *                  {@link #DISMISS_EVENT_SWIPE}, {@link #DISMISS_EVENT_ACTION},
-         *                  {@link #DISMISS_EVENT_TIMEOUT}, {@link #DISMISS_EVENT_MANUAL} or
-         *                  {@link #DISMISS_EVENT_CONSECUTIVE}.
+         *                  {@link #DISMISS_EVENT_TIMEOUT}, {@link #DISMISS_EVENT_MANUAL},
+         *                  {@link #DISMISS_EVENT_CONSECUTIVE} or
+         *                  {@link #DISMISS_EVENT_AGGREGATED}.
          */
         public void onDismissed(JToast JToast, @JToast.Callback.DismissEvent int event) {
             // empty
@@ -85,6 +113,40 @@ public class JToast {
         }
     }
 
+    /**
+     * Builds and observes the summary JToasts of {@link #setAggregation}. Called on the main
+     * thread.
+     */
+    public static abstract class AggregationCallback {
+        /**
+         * Return the text of the summary shown in place of the collapsed JToasts. By default
+         * {@code "<count> messages — latest: <latest text>"}.
+         *
+         * @param texts the texts of the collapsed JToasts, oldest first
+         */
+        @NonNull
+        public CharSequence getSummaryText(@NonNull Context context,
+                                           @NonNull List<CharSequence> texts) {
+            return context.getString(R.string.jtoast_summary, texts.size(),
+                    texts.get(texts.size() - 1));
+        }
+
+        /**
+         * Called when queued JToasts have been collapsed into {@code summary}. The collapsed
+         * JToasts are dismissed with {@link Callback#DISMISS_EVENT_AGGREGATED}.
+         *
+         * @param texts the texts of the collapsed JToasts, oldest first, including those of an
+         *              earlier summary which was collapsed again
+         */
+        public void onAggregated(@NonNull JToast summary, @NonNull List<CharSequence> texts) {
+            // empty
+        }
+    }
+
+    private static final AggregationCallback DEFAULT_AGGREGATION_CALLBACK =
+            new AggregationCallback() {
+            };
+
     /**
      * @hide
      */
@@ -115,9 +177,144 @@ public class JToast {
      */
     public static final int LENGTH_LONG = 0;
 
+    /**
+     * @hide
+     */
+    @IntDef({OVERFLOW_DROP_OLDEST, OVERFLOW_DROP_NEWEST, OVERFLOW_REPLACE_CURRENT})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface OverflowPolicy {
+    }
+
+    /**
+     * When the queue is full, drop the JToast of the lowest priority which has been waiting the
+     * longest.
+     *
+     * @see #setOverflowPolicy(int)
+     */
+    public static final int OVERFLOW_DROP_OLDEST = 0;
+
+    /**
+     * When the queue is full, drop the newly shown JToast instead of queueing it.
+     *
+     * @see #setOverflowPolicy(int)
+     */
+    public static final int OVERFLOW_DROP_NEWEST = 1;
+
+    /**
+     * Every new JToast dismisses the current one and is shown straight after it, ahead of the
+     * rest of the queue of its priority. A current JToast of a higher priority stays.
+     *
+     * @see #setOverflowPolicy(int)
+     */
+    public static final int OVERFLOW_REPLACE_CURRENT = 2;
+
+    /**
+     * @hide
+     */
+    @IntDef({PRIORITY_LOW, PRIORITY_NORMAL, PRIORITY_HIGH, PRIORITY_CRITICAL})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Priority {
+    }
+
+    /**
+     * Shown after every more important JToast, and dropped first when the queue is full.
+     *
+     * @see #setPriority(int)
+     */
+    public static final int PRIORITY_LOW = 0;
+
+    /**
+     * The default priority.
+     *
+     * @see #setPriority(int)
+     */
+    public static final int PRIORITY_NORMAL = 1;
+
+    /**
+     * Shown ahead of every less important JToast waiting in the queue.
+     *
+     * @see #setPriority(int)
+     */
+    public static final int PRIORITY_HIGH = 2;
+
+    /**
+     * Like {@link #PRIORITY_HIGH}, and takes the screen from a less important JToast right away.
+     * That JToast is shown again afterwards for the time it had left.
+     *
+     * @see #setPriority(int)
+     */
+    public static final int PRIORITY_CRITICAL = 3;
+
+    /**
+     * @hide
+     */
+    @IntDef({RENDER_MODE_DIRECT, RENDER_MODE_HOST})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface RenderMode {
+    }
+
+    /**
+     * Add and remove the JToast's view directly on its parent. Every JToast triggers a layout
+     * pass of the parent.
+     *
+     * @see #setRenderMode(int)
+     */
+    public static final int RENDER_MODE_DIRECT = 0;
+
+    /**
+     * Install one host container per parent the first time a JToast is shown in it, and only add
+     * and remove JToast views inside that host afterwards. The parent's layout is never touched
+     * again.
+     *
+     * @see #setRenderMode(int)
+     */
+    public static final int RENDER_MODE_HOST = 1;
+
+    private static volatile int sRenderMode = RENDER_MODE_DIRECT;
+
+    /**
+     * @hide
+     */
+    @IntDef({ANIMATION_MODE_AUTO, ANIMATION_MODE_ALWAYS, ANIMATION_MODE_NEVER})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface AnimationMode {
+    }
+
+    /**
+     * Animate JToasts unless the system animator duration scale is 0 or JToasts are piling up
+     * in the queue.
+     *
+     * @see #setAnimationMode(int)
+     */
+    public static final int ANIMATION_MODE_AUTO = 0;
+
+    /**
+     * Always animate JToasts in and out.
+     *
+     * @see #setAnimationMode(int)
+     */
+    public static final int ANIMATION_MODE_ALWAYS = 1;
+
+    /**
+     * Never animate JToasts.
+     *
+     * @see #setAnimationMode(int)
+     */
+    public static final int ANIMATION_MODE_NEVER = 2;
+
+    private static volatile int sAnimationMode = ANIMATION_MODE_AUTO;
+
+    /**
+     * Queue depth from which {@link #ANIMATION_MODE_AUTO} stops animating, so a backlog
+     * drains without spending frames on animations.
+     */
+    private static final int BUSY_QUEUE_DEPTH = 3;
+
     private static final int ANIMATION_DURATION = 250;
     private static final int ANIMATION_FADE_DURATION = 180;
 
+    private static final Interpolator FAST_OUT_SLOW_IN_INTERPOLATOR = new FastOutSlowInInterpolator();
+
     private static final Handler sHandler;
     private static final int MSG_SHOW = 0;
     private static final int MSG_DISMISS = 1;
@@ -139,20 +336,28 @@ public class JToast {
         });
     }
 
-    private final ViewGroup mParent;
-    private final Context mContext;
-    private final LinearLayout mView;
-    private final TextView mMessageView; //显示文本控件
+    private static final int MAX_TOAST_POOL_SIZE = 4;
+    private static final ArrayDeque<JToast> sToastPool = new ArrayDeque<>(MAX_TOAST_POOL_SIZE);
+
+    private ViewGroup mParent;
+    private Context mContext;
+    private ViewGroup mContainer; //显示期间mView所在的容器 mParent或它的JToastHostLayout
+    private LinearLayout mView; //只在显示期间从JToastViewPool取出
+    private JToastMessageView mMessageView; //显示文本控件
+    private CharSequence mText;
     private int mDuration;
+    private int mDismissEvent;
     private JToast.Callback mCallback;
+    private boolean mRecyclable; //由obtain()创建 dismiss后回到sToastPool
+    private List<CharSequence> mAggregatedTexts; //摘要JToast合并的文本
+    private int mGravity = Gravity.BOTTOM;
+    private Object mChannel; //为null时按mGravity分道
+    private int mPriority = PRIORITY_NORMAL;
+    private boolean mPreempted; //被更重要的JToast打断 等待重新显示
 
     private JToast(ViewGroup parent) {
         mParent = parent;
         mContext = parent.getContext();
-        LayoutInflater inflater = LayoutInflater.from(mContext);
-
-        mView = (LinearLayout)inflater.inflate(com.janedler.V2.R.layout.ui_v2_toast_layout, mParent, false);
-        mMessageView = (TextView) mView.findViewById(com.janedler.V2.R.id.message);
     }
 
     /**
@@ -203,16 +408,78 @@ public class JToast {
         return make(view, view.getResources().getText(resId), duration);
     }
 
+    /**
+     * Like {@link #make(View, CharSequence, int)}, but reuses a JToast which has been dismissed
+     * before. Once a JToast was made with this method, showing it again allocates nothing.
+     * <p>
+     * The returned JToast goes back to the pool as soon as it has been dismissed, so it must not
+     * be kept or shown again after that.
+     *
+     * @param view     The view to find a parent from.
+     * @param text     The text to show.  Can be formatted text.
+     * @param duration How long to display the message.  Either {@link #LENGTH_SHORT} or {@link
+     *                 #LENGTH_LONG}
+     */
+    @NonNull
+    public static JToast obtain(@NonNull View view, @NonNull CharSequence text,
+                                @JToast.Duration int duration) {
+        final ViewGroup parent = findSuitableParent(view);
+        JToast toast;
+        synchronized (sToastPool) {
+            toast = sToastPool.poll();
+        }
+        if (toast == null) {
+            toast = new JToast(parent);
+        } else {
+            toast.mParent = parent;
+            toast.mContext = parent.getContext();
+        }
+        toast.mRecyclable = true;
+        toast.setText(text);
+        toast.setDuration(duration);
+        return toast;
+    }
+
+    private void recycle() {
+        mRecyclable = false;
+        mParent = null;
+        mContext = null;
+        mText = null;
+        mAggregatedTexts = null;
+        mCallback = null;
+        mDuration = 0;
+        mGravity = Gravity.BOTTOM;
+        mChannel = null;
+        mPriority = PRIORITY_NORMAL;
+        mPreempted = false;
+        synchronized (sToastPool) {
+            if (sToastPool.size() < MAX_TOAST_POOL_SIZE) {
+                sToastPool.offer(this);
+            }
+        }
+    }
+
     private static ViewGroup findSuitableParent(View view) {
+        final View origin = view;
         ViewGroup fallback = null;
         do {
+            final ViewGroup cached = JToastParentCache.get(view);
+            if (cached != null) {
+                if (view != origin) {
+                    // An ancestor has already been resolved, remember it for the origin too
+                    JToastParentCache.put(origin, cached);
+                }
+                return cached;
+            }
             if (view instanceof CoordinatorLayout) {
                 // We've found a CoordinatorLayout, use it
+                JToastParentCache.put(origin, (ViewGroup) view);
                 return (ViewGroup) view;
             } else if (view instanceof FrameLayout) {
                 if (view.getId() == android.R.id.content) {
                     // If we've hit the decor content view, then we didn't find a CoL in the
                     // hierarchy, so use it.
+                    JToastParentCache.put(origin, (ViewGroup) view);
                     return (ViewGroup) view;
                 } else {
                     // It's not the content view but we'll use it as our fallback
@@ -238,8 +505,11 @@ public class JToast {
      */
     @NonNull
     public JToast setText(@NonNull CharSequence message) {
+        mText = message;
         final TextView tv = mMessageView;
-        tv.setText(message);
+        if (tv != null) {
+            tv.setText(message);
+        }
         return this;
     }
 
@@ -266,39 +536,411 @@ public class JToast {
         return this;
     }
 
+    /**
+     * Set a callback to be called when the visibility of this {@link JToast} changes.
+     */
+    @NonNull
+    public JToast setCallback(JToast.Callback callback) {
+        mCallback = callback;
+        return this;
+    }
+
+    /**
+     * Set where in its parent the {@link JToast} is shown, {@link Gravity#BOTTOM} by default.
+     * Unless a {@link #setChannel(Object) channel} is set, every gravity has a queue of its own,
+     * so JToasts at the top and at the bottom are shown at the same time.
+     *
+     * @param gravity {@link Gravity#TOP}, {@link Gravity#CENTER_VERTICAL} or {@link Gravity#BOTTOM}
+     */
+    @NonNull
+    public JToast setGravity(int gravity) {
+        mGravity = gravity;
+        return this;
+    }
+
+    /**
+     * Queue this {@link JToast} behind the other JToasts of {@code channel} only, instead of those
+     * of its gravity. JToasts of other channels are shown independently, so a noisy channel never
+     * delays them. Channels are compared with {@link Object#equals(Object)}.
+     *
+     * @see #setChannelCapacity(Object, int)
+     */
+    @NonNull
+    public JToast setChannel(@Nullable Object channel) {
+        mChannel = channel;
+        return this;
+    }
+
+    /**
+     * Set the priority of this {@link JToast}, {@link #PRIORITY_NORMAL} by default. Queued
+     * JToasts are shown by priority, in order within the same priority.
+     *
+     * @param priority {@link #PRIORITY_LOW}, {@link #PRIORITY_NORMAL}, {@link #PRIORITY_HIGH} or
+     *                 {@link #PRIORITY_CRITICAL}
+     */
+    @NonNull
+    public JToast setPriority(@Priority int priority) {
+        mPriority = priority;
+        return this;
+    }
+
     /**
      * Show the {@link JToast}.
      */
     public void show() {
-        JToastManager.getInstance().show(mDuration, mManagerCallback);
+        // Lay the text out in the background while the toast waits for its turn
+        JToastTextLayouts.precompute(mContext, mText);
+        // Small gravity values are cached by Integer.valueOf(), so this doesn't allocate
+        JToastManager.getInstance().show(mDuration, mPriority,
+                mChannel != null ? mChannel : mGravity, mManagerCallback);
     }
 
-    private final JToastManager.Callback mManagerCallback = new JToastManager.Callback() {
+    private final ManagerCallback mManagerCallback = new ManagerCallback();
+
+    private final class ManagerCallback extends JToastManager.Callback {
         @Override
-        public void show() {
+        void show() {
             sHandler.sendMessage(sHandler.obtainMessage(MSG_SHOW, JToast.this));
         }
 
         @Override
-        public void dismiss(int event) {
+        void dismiss(int event) {
             sHandler.sendMessage(sHandler.obtainMessage(MSG_DISMISS, event, 0, JToast.this));
         }
-    };
+
+        JToast toast() {
+            return JToast.this;
+        }
+    }
+
+    /**
+     * Collapse bursts of JToasts into one summary JToast: as soon as {@code threshold} JToasts
+     * are waiting to be shown, or {@code threshold} were shown within {@code windowMs} while at
+     * least two are waiting, every waiting JToast is replaced by a single summary shown for
+     * {@link #LENGTH_LONG}, so however many arrive, the backlog takes the screen time of one.
+     * Off by default; has no effect with {@link #OVERFLOW_REPLACE_CURRENT}.
+     *
+     * @param threshold 0 to turn aggregation off, otherwise at least 2; should not exceed the
+     *                  {@link #setQueueCapacity(int) queue capacity}
+     * @param windowMs  0 to only aggregate on the queue depth
+     * @param callback  builds the summary text and is told about every aggregation, or null for
+     *                  the default text
+     */
+    public static void setAggregation(int threshold, long windowMs,
+                                      @Nullable AggregationCallback callback) {
+        final AggregationCallback aggregationCallback =
+                callback != null ? callback : DEFAULT_AGGREGATION_CALLBACK;
+        JToastManager.getInstance().setAggregation(threshold, windowMs,
+                threshold <= 0 ? null : new JToastManager.Summarizer() {
+                    @Override
+                    public JToastManager.Callback summarize(
+                            List<JToastManager.Callback> collapsed) {
+                        return buildSummary(collapsed, aggregationCallback);
+                    }
+                });
+    }
+
+    private static JToastManager.Callback buildSummary(List<JToastManager.Callback> collapsed,
+                                                       AggregationCallback callback) {
+        final ArrayList<CharSequence> texts = new ArrayList<>();
+        JToast latest = null;
+        int priority = PRIORITY_LOW;
+        for (int i = 0, size = collapsed.size(); i < size; i++) {
+            final JToast toast = ((ManagerCallback) collapsed.get(i)).toast();
+            priority = Math.max(priority, toast.mPriority);
+            if (toast.mAggregatedTexts != null) {
+                texts.addAll(toast.mAggregatedTexts);
+            } else if (toast.mText != null) {
+                texts.add(toast.mText);
+            }
+            latest = toast;
+        }
+        if (texts.isEmpty() || latest.mParent == null) {
+            return null;
+        }
+        final JToast summary = new JToast(latest.mParent);
+        summary.mAggregatedTexts = Collections.unmodifiableList(texts);
+        summary.setText(callback.getSummaryText(summary.mContext, summary.mAggregatedTexts));
+        summary.setDuration(LENGTH_LONG);
+        // As important as the most important JToast it replaces
+        summary.mPriority = priority;
+        summary.mGravity = latest.mGravity;
+        callback.onAggregated(summary, summary.mAggregatedTexts);
+        JToastTextLayouts.precompute(summary.mContext, summary.mText);
+        return summary.mManagerCallback;
+    }
+
+    /**
+     * Set how many JToasts of each channel may wait behind the one currently shown.
+     * Defaults to {@value JToastManager#DEFAULT_QUEUE_CAPACITY}.
+     *
+     * @see #setOverflowPolicy(int)
+     */
+    public static void setQueueCapacity(int capacity) {
+        JToastManager.getInstance().setQueueCapacity(capacity);
+    }
+
+    /**
+     * Set what happens to a JToast shown while the queue is full.
+     *
+     * @param policy one of {@link #OVERFLOW_DROP_OLDEST}, {@link #OVERFLOW_DROP_NEWEST} or
+     *               {@link #OVERFLOW_REPLACE_CURRENT}. Dropped JToasts are reported to their
+     *               {@link Callback} with {@link Callback#DISMISS_EVENT_CONSECUTIVE}.
+     */
+    public static void setOverflowPolicy(@OverflowPolicy int policy) {
+        JToastManager.getInstance().setOverflowPolicy(policy);
+    }
+
+    /**
+     * Set how many JToasts of {@code channel} may wait behind the one currently shown, or go
+     * back to the {@link #setQueueCapacity(int) shared capacity} if {@code capacity} is 0.
+     * A channel is either the value given to {@link #setChannel(Object)} or a boxed gravity.
+     */
+    public static void setChannelCapacity(@NonNull Object channel, int capacity) {
+        JToastManager.getInstance().setChannelCapacity(channel, capacity);
+    }
+
+    /**
+     * Return the number of JToasts waiting to be shown in every channel, not counting the ones
+     * currently shown.
+     */
+    public static int getQueueDepth() {
+        return JToastManager.getInstance().getQueueDepth();
+    }
+
+    /**
+     * Set how JToast views are attached to their parent. Only affects JToasts shown afterwards.
+     *
+     * @param mode either {@link #RENDER_MODE_DIRECT} (the default) or {@link #RENDER_MODE_HOST}
+     */
+    public static void setRenderMode(@RenderMode int mode) {
+        sRenderMode = mode;
+    }
+
+    /**
+     * Set the maximum number of inflated toast views kept per parent for reuse.
+     * Defaults to {@value JToastViewPool#DEFAULT_MAX_POOL_SIZE}.
+     */
+    public static void setViewPoolSize(int size) {
+        JToastViewPool.setMaxPoolSize(size);
+    }
+
+    /**
+     * Get the first JToast ready ahead of time, e.g. from {@code Application.onCreate()}: sets
+     * up the JToast handler and manager, and inflates and measures a toast view on a background
+     * thread, so the first {@link #show()} neither loads classes nor parses the layout on the
+     * main thread. Optional; calling it again does nothing until the view pool is trimmed.
+     */
+    public static void prewarm(@NonNull Context context) {
+        JToastManager.getInstance();
+        JToastViewPool.prewarm(context);
+    }
+
+    /**
+     * Drop every pooled toast view. This also happens automatically on
+     * {@link android.content.ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public static void trimViewPool() {
+        JToastViewPool.clear();
+    }
+
+    /**
+     * Return how many toasts were shown with a pooled view.
+     */
+    public static int getViewPoolHitCount() {
+        return JToastViewPool.getHitCount();
+    }
+
+    /**
+     * Return how many toasts had to inflate a new view.
+     */
+    public static int getViewPoolMissCount() {
+        return JToastViewPool.getMissCount();
+    }
+
+    /**
+     * Set whether JToasts animate in and out.
+     *
+     * @param mode one of {@link #ANIMATION_MODE_AUTO} (the default), {@link #ANIMATION_MODE_ALWAYS}
+     *             or {@link #ANIMATION_MODE_NEVER}
+     */
+    public static void setAnimationMode(@AnimationMode int mode) {
+        sAnimationMode = mode;
+    }
 
     final void showView() {
-        mParent.addView(mView);
-        JToastManager.getInstance().onShown(mManagerCallback);
+        if (mView == null) {
+            mContainer = sRenderMode == RENDER_MODE_HOST ? JToastHostLayout.obtain(mParent) : mParent;
+            mView = (LinearLayout) JToastViewPool.acquire(mContainer);
+            mMessageView = (JToastMessageView) mView.findViewById(com.janedler.V2.R.id.message);
+        }
+        mView.setGravity(mGravity);
+        mMessageView.setText(mText);
+        // Only attaches the layout if the worker has built it by now
+        mMessageView.setPrecomputedLayout(JToastTextLayouts.get(mText));
+        final boolean traced = JToastTrace.beginSection(JToastTrace.SECTION_ADD_VIEW);
+        try {
+            mContainer.addView(mView);
+        } finally {
+            JToastTrace.endSection(traced);
+        }
+
+        if (!shouldAnimate()) {
+            resetAnimatedState();
+            onViewShown();
+        } else if (ViewCompat.isLaidOut(mMessageView)) {
+            animateViewIn();
+        } else {
+            // Wait for the first layout so that we know how far to slide in from
+            mMessageView.addOnLayoutChangeListener(mAnimateInOnLayout);
+        }
     }
 
     final void hideView(int event) {
-        // First remove the view from the parent
-        mParent.removeView(mView);
+        if (mView == null) {
+            // Never shown, e.g. dropped from the queue
+            onViewHidden(event);
+            return;
+        }
+        mMessageView.removeOnLayoutChangeListener(mAnimateInOnLayout);
+        if (shouldAnimate()) {
+            animateViewOut(event);
+        } else {
+            onViewHidden(event);
+        }
+    }
+
+    private final View.OnLayoutChangeListener mAnimateInOnLayout = new View.OnLayoutChangeListener() {
+        @Override
+        public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                                   int oldLeft, int oldTop, int oldRight, int oldBottom) {
+            v.removeOnLayoutChangeListener(this);
+            animateViewIn();
+        }
+    };
+
+    private final ViewPropertyAnimatorListenerAdapter mAnimateInListener =
+            new ViewPropertyAnimatorListenerAdapter() {
+                @Override
+                public void onAnimationEnd(View view) {
+                    onViewShown();
+                }
+            };
+
+    private final ViewPropertyAnimatorListenerAdapter mAnimateOutListener =
+            new ViewPropertyAnimatorListenerAdapter() {
+                @Override
+                public void onAnimationEnd(View view) {
+                    onViewHidden(mDismissEvent);
+                }
+            };
+
+    private void animateViewIn() {
+        final TextView view = mMessageView;
+        // Slide in from the edge the JToast is attached to
+        ViewCompat.setTranslationY(view,
+                mGravity == Gravity.TOP ? -view.getHeight() : view.getHeight());
+        ViewCompat.setAlpha(view, 0f);
+        // withLayer() keeps the view on a hardware layer only while the animation runs
+        ViewCompat.animate(view)
+                .translationY(0f)
+                .alpha(1f)
+                .setInterpolator(FAST_OUT_SLOW_IN_INTERPOLATOR)
+                .setDuration(ANIMATION_DURATION)
+                .withLayer()
+                .setListener(mAnimateInListener)
+                .start();
+    }
+
+    private void animateViewOut(int event) {
+        mDismissEvent = event;
+        final ViewPropertyAnimatorCompat animator = ViewCompat.animate(mMessageView);
+        // Cancel a running enter animation without reporting it as shown
+        animator.setListener(null);
+        animator.cancel();
+        animator.alpha(0f)
+                .setInterpolator(FAST_OUT_SLOW_IN_INTERPOLATOR)
+                .setDuration(ANIMATION_FADE_DURATION)
+                .withLayer()
+                .setListener(mAnimateOutListener)
+                .start();
+    }
+
+    private void resetAnimatedState() {
+        ViewCompat.setTranslationY(mMessageView, 0f);
+        ViewCompat.setAlpha(mMessageView, 1f);
+    }
+
+    private boolean shouldAnimate() {
+        switch (sAnimationMode) {
+            case ANIMATION_MODE_ALWAYS:
+                return true;
+            case ANIMATION_MODE_NEVER:
+                return false;
+            case ANIMATION_MODE_AUTO:
+            default:
+                return getAnimatorDurationScale() > 0f
+                        && JToastManager.getInstance().getQueueDepth() < BUSY_QUEUE_DEPTH;
+        }
+    }
+
+    private float getAnimatorDurationScale() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            return Settings.Global.getFloat(mContext.getContentResolver(),
+                    Settings.Global.ANIMATOR_DURATION_SCALE, 1f);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            return Settings.System.getFloat(mContext.getContentResolver(),
+                    Settings.System.ANIMATOR_DURATION_SCALE, 1f);
+        }
+        return 1f;
+    }
+
+    private void onViewShown() {
+        JToastManager.getInstance().onShown(mManagerCallback);
+        final boolean resumed = mPreempted;
+        mPreempted = false;
+        if (mCallback != null && !resumed) {
+            mCallback.onShown(this);
+        }
+    }
+
+    private void onViewHidden(int event) {
+        // First remove the view from the parent and give it back to the pool
+        if (mView != null) {
+            // A hide can arrive during the enter animation: stop it before the view is pooled,
+            // or the next JToast starts from where it was cut off
+            final ViewPropertyAnimatorCompat animator = ViewCompat.animate(mMessageView);
+            animator.setListener(null);
+            animator.cancel();
+            mMessageView.setLayerType(View.LAYER_TYPE_NONE, null);
+            resetAnimatedState();
+            final boolean traced = JToastTrace.beginSection(JToastTrace.SECTION_REMOVE_VIEW);
+            try {
+                mContainer.removeView(mView);
+            } finally {
+                JToastTrace.endSection(traced);
+            }
+            JToastViewPool.release(mContainer, mView);
+            mView = null;
+            mMessageView = null;
+            mContainer = null;
+        }
+        if (event == JToastManager.DISMISS_EVENT_PREEMPTED) {
+            // Only out of the way of a more important JToast, it is shown again later
+            mPreempted = true;
+            JToastManager.getInstance().onDismissed(mManagerCallback);
+            return;
+        }
+        mPreempted = false;
         // Now call the dismiss listener (if available)
         if (mCallback != null) {
             mCallback.onDismissed(this, event);
         }
         // Finally, tell the JSnackbarManager that it has been dismissed
         JToastManager.getInstance().onDismissed(mManagerCallback);
+        if (mRecyclable) {
+            recycle();
+        }
     }
 
 }
@@ -0,0 +1,101 @@
+package com.janedler.V2;
+
+import android.content.Context;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+import android.widget.FrameLayout;
+
+/**
+ * Container installed once per parent in {@link JToast#RENDER_MODE_HOST}. JToast views are
+ * added to and removed from this host instead of the parent.
+ * <p>
+ * The host always matches its parent, so its size never depends on its children. Layout
+ * requests coming from a toast therefore stop at the host, which stays marked as needing layout
+ * and lays itself out in place just before the next frame is drawn. The parent (usually the
+ * screen's CoordinatorLayout or content view) never has to measure and lay out the app again.
+ */
+final class JToastHostLayout extends FrameLayout {
+
+    /**
+     * Lays out a host whose layout was requested, right before the frame is drawn. Registered at
+     * most once per frame; the parent may have laid the host out already by then.
+     */
+    private final ViewTreeObserver.OnPreDrawListener mLayoutBeforeDraw =
+            new ViewTreeObserver.OnPreDrawListener() {
+                @Override
+                public boolean onPreDraw() {
+                    getViewTreeObserver().removeOnPreDrawListener(this);
+                    mLayoutScheduled = false;
+                    if (isLayoutRequested()) {
+                        layoutInPlace();
+                    }
+                    return true;
+                }
+            };
+
+    private boolean mLayoutScheduled;
+
+    private JToastHostLayout(Context context) {
+        super(context);
+    }
+
+    /**
+     * Return the host of {@code parent}, installing it the first time.
+     */
+    static JToastHostLayout obtain(ViewGroup parent) {
+        final Object tag = parent.getTag(R.id.jtoast_host);
+        if (tag instanceof JToastHostLayout && ((JToastHostLayout) tag).getParent() == parent) {
+            return (JToastHostLayout) tag;
+        }
+        final JToastHostLayout host = new JToastHostLayout(parent.getContext());
+        parent.addView(host, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.MATCH_PARENT));
+        parent.setTag(R.id.jtoast_host, host);
+        return host;
+    }
+
+    @Override
+    public void requestLayout() {
+        if (mLayoutBeforeDraw == null || getParent() == null || getWidth() == 0 || getHeight() == 0) {
+            // Not laid out by the parent yet (or still being constructed)
+            super.requestLayout();
+            return;
+        }
+        // Mark ourselves dirty without walking up to the parent, so isLayoutRequested() holds
+        // until the host is laid out, and lay out in place in this frame's traversal
+        forceLayout();
+        if (!mLayoutScheduled) {
+            mLayoutScheduled = true;
+            getViewTreeObserver().addOnPreDrawListener(mLayoutBeforeDraw);
+            // Make sure there is a traversal to run the listener in
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (mLayoutScheduled) {
+            mLayoutScheduled = false;
+            final ViewTreeObserver observer = getViewTreeObserver();
+            if (observer.isAlive()) {
+                observer.removeOnPreDrawListener(mLayoutBeforeDraw);
+            }
+        }
+    }
+
+    private void layoutInPlace() {
+        if (getParent() == null) {
+            return;
+        }
+        final JToastMetrics.Listener metrics = JToastMetrics.sListener;
+        final long start = metrics != null ? System.nanoTime() : 0;
+        measure(MeasureSpec.makeMeasureSpec(getWidth(), MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(getHeight(), MeasureSpec.EXACTLY));
+        layout(getLeft(), getTop(), getRight(), getBottom());
+        if (metrics != null) {
+            metrics.onLayout(System.nanoTime() - start);
+        }
+        invalidate();
+    }
+}
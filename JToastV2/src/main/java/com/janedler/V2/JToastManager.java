@@ -1,101 +1,284 @@
 package com.janedler.V2;
 
+import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
-import android.util.Log;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+import android.view.Choreographer;
+
+import com.janedler.core.Clock;
+import com.janedler.core.OpQueue;
+import com.janedler.core.Scheduler;
+import com.janedler.core.ToastLanes;
+import com.janedler.core.ToastRecord;
+import com.janedler.core.ToastScheduler;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by janedler on 2016/11/23.
+ * <p>
+ * All queue state is owned by the main thread, so none of it needs a lock. Calls made on the
+ * main thread are applied straight away; calls from other threads go through a lock-free
+ * {@link OpQueue} and are applied in order at the start of the next frame, so a worker calling
+ * {@link #show} never waits for the UI thread and the UI thread never waits for a worker. However
+ * many workers post in a burst, the main thread wakes up for them at most once per frame.
+ * <p>
+ * The queue, timeouts and state transitions themselves live in the Android-free
+ * {@link ToastScheduler}; this class only feeds it the main looper's clock and handler. Every
+ * channel (see {@link JToast#setChannel(Object)}) is a lane of its own {@link ToastLanes}, so
+ * JToasts of different channels are shown at the same time.
  */
 public class JToastManager {
 
     private static final int MSG_TIMEOUT = 0;
+    private static final int MSG_DRAIN = 1;
 
     private static final int SHORT_DURATION_MS = 1500;
     private static final int LONG_DURATION_MS = 2750;
 
-    private static JToastManager sSnackbarManager;
+    static final int DEFAULT_QUEUE_CAPACITY = ToastScheduler.DEFAULT_CAPACITY;
+
+    /**
+     * Sent to {@link Callback#dismiss(int)} when a more important Snackbar takes the screen. Not
+     * a final event: the Snackbar is shown again later.
+     */
+    static final int DISMISS_EVENT_PREEMPTED = JToast.Callback.DISMISS_EVENT_PREEMPTED;
+
+    private static final int OP_SHOW = 0;
+    private static final int OP_DISMISS = 1;
+    private static final int OP_ON_SHOWN = 2;
+    private static final int OP_ON_DISMISSED = 3;
+    private static final int OP_CANCEL_TIMEOUT = 4;
+    private static final int OP_RESTORE_TIMEOUT = 5;
+    private static final int OP_SET_CAPACITY = 6;
+    private static final int OP_SET_OVERFLOW_POLICY = 7;
+    private static final int OP_SET_AGGREGATION = 8;
+    private static final int OP_SET_CHANNEL_CAPACITY = 9;
+
+    /**
+     * OP_SHOW carries the priority in the low bits of its duration argument, so that it is
+     * captured with the call instead of read later from a field another thread may change.
+     */
+    private static final int PRIORITY_BITS = 2;
+    private static final int PRIORITY_MASK = (1 << PRIORITY_BITS) - 1;
+    private static final int MAX_SHOW_DURATION_MS = Integer.MAX_VALUE >> PRIORITY_BITS;
+
+    private static class JToastManagerHolder {
+        private static final JToastManager instance = new JToastManager();
+    }
 
     static JToastManager getInstance() {
-        if (sSnackbarManager == null) {
-            sSnackbarManager = new JToastManager();
-        }
-        return sSnackbarManager;
+        return JToastManagerHolder.instance;
     }
 
-    private final Object mLock;
+    private static final Clock UPTIME_CLOCK = new Clock() {
+        @Override
+        public long uptimeMillis() {
+            return SystemClock.uptimeMillis();
+        }
+    };
+
     private final Handler mHandler;
 
-    private JToastManager.SnackbarRecord mCurrentSnackbar;
-    private JToastManager.SnackbarRecord mNextSnackbar;
+    private final OpQueue mOps;
+
+    /**
+     * The main thread's Choreographer, once the first drain has run there. Null before API 16.
+     */
+    private volatile Choreographer mChoreographer;
+    private Choreographer.FrameCallback mDrainFrame;
+
+    /**
+     * Only accessed on the main thread.
+     */
+    private final ToastLanes mLanes;
+
+    private volatile int mQueueDepth;
 
     private JToastManager() {
-        mLock = new Object();
         mHandler = new Handler(Looper.getMainLooper(), new Handler.Callback() {
             @Override
             public boolean handleMessage(Message message) {
-                Log.e("TAG","hHH");
                 switch (message.what) {
                     case MSG_TIMEOUT:
-                        handleTimeout((JToastManager.SnackbarRecord) message.obj);
+                        final boolean traced = JToastTrace.beginSection(JToastTrace.SECTION_TIMEOUT);
+                        try {
+                            ((Runnable) message.obj).run();
+                        } finally {
+                            JToastTrace.endSection(traced);
+                        }
+                        return true;
+                    case MSG_DRAIN:
+                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN
+                                && mChoreographer == null) {
+                            // Choreographer is per looper, so it can only be looked up here
+                            mDrainFrame = new Choreographer.FrameCallback() {
+                                @Override
+                                public void doFrame(long frameTimeNanos) {
+                                    mOps.drain();
+                                }
+                            };
+                            mChoreographer = Choreographer.getInstance();
+                        }
+                        mOps.drain();
                         return true;
                 }
                 return false;
             }
         });
+        mOps = new OpQueue(new OpQueue.Target() {
+            @Override
+            public void apply(int op, Object subject, Object extra, int arg) {
+                JToastManager.this.apply(op, subject, extra, arg);
+            }
+        }, new OpQueue.Owner() {
+            @Override
+            public boolean isOwnerThread() {
+                return Looper.myLooper() == mHandler.getLooper();
+            }
+
+            @Override
+            public void requestDrain() {
+                final Choreographer choreographer = mChoreographer;
+                if (choreographer != null) {
+                    // Choreographer may be posted to from any thread
+                    choreographer.postFrameCallback(mDrainFrame);
+                } else {
+                    mHandler.sendEmptyMessage(MSG_DRAIN);
+                }
+            }
+        });
+        final Scheduler timeouts = new Scheduler() {
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+                mHandler.sendMessageDelayed(Message.obtain(mHandler, MSG_TIMEOUT, task), delayMillis);
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+                mHandler.removeMessages(MSG_TIMEOUT, task);
+            }
+        };
+        mLanes = new ToastLanes(new ToastLanes.Factory() {
+            @Override
+            public ToastScheduler create(Object key) {
+                // Every lane has its own timeout task, they all go through the same handler
+                final ToastScheduler lane = new ToastScheduler(UPTIME_CLOCK, timeouts, mDisplay);
+                lane.setListener(mSchedulerListener);
+                return lane;
+            }
+
+            @Override
+            public void onEvicted(Object key, ToastScheduler lane) {
+                // An idle lane has no timeout pending and nothing else is kept per lane
+            }
+        });
+        mLanes.setPreemptionPriority(JToast.PRIORITY_CRITICAL);
     }
 
-    public void show(int duration, JToastManager.Callback callback) {
-        synchronized (mLock) {
-            if (isCurrentSnackbar(callback)) {
-                // Means that the callback is already in the queue. We'll just update the duration
-                mCurrentSnackbar.duration = duration;
+    /**
+     * Forwards the scheduler's requests to the JToasts' callbacks.
+     */
+    private final ToastScheduler.Display mDisplay = new ToastScheduler.Display() {
+        @Override
+        public boolean show(ToastRecord record) {
+            final JToastManager.Callback callback = ((SnackbarRecord) record).callback.get();
+            if (callback == null) {
+                // The callback doesn't exist any more, skip the Snackbar
+                return false;
+            }
+            callback.show();
+            return true;
+        }
+
+        @Override
+        public boolean dismiss(ToastRecord record, int event) {
+            final JToastManager.Callback callback = ((SnackbarRecord) record).callback.get();
+            if (callback == null) {
+                return false;
+            }
+            callback.dismiss(event);
+            return true;
+        }
+    };
+
+    private final ToastScheduler.Listener mSchedulerListener = new ToastScheduler.Listener() {
+        @Override
+        public void onEnqueued(ToastRecord record, int queueDepth) {
+            JToastTrace.record(JToastTrace.EVENT_ENQUEUE, queueDepth);
+            final JToastMetrics.Listener metrics = JToastMetrics.sListener;
+            if (metrics != null) {
+                metrics.onEnqueued(queueDepth);
+            }
+        }
+
+        @Override
+        public void onShow(ToastRecord record, int queueDepth) {
+            JToastTrace.record(JToastTrace.EVENT_SHOW, queueDepth);
+        }
 
-                // If this is the Snackbar currently being shown, call re-schedule it's
-                // timeout
-                mHandler.removeCallbacksAndMessages(mCurrentSnackbar);
-                scheduleTimeoutLocked(mCurrentSnackbar);
-                return;
-            } else if (isNextSnackbar(callback)) {
-                // We'll just update the duration
-                mNextSnackbar.duration = duration;
-            } else {
-                // Else, we need to create a new record and queue it
-                mNextSnackbar = new JToastManager.SnackbarRecord(duration, callback);
+        @Override
+        public void onShown(ToastRecord record) {
+            JToastTrace.record(JToastTrace.EVENT_SHOWN, 0);
+            final JToastMetrics.Listener metrics = JToastMetrics.sListener;
+            if (metrics != null) {
+                metrics.onShown(record.getShownTime() - record.getEnqueueTime());
             }
+        }
 
-            if (mCurrentSnackbar != null && cancelSnackbarLocked(mCurrentSnackbar,
-                    JToast.Callback.DISMISS_EVENT_CONSECUTIVE)) {
-                // If we currently have a Snackbar, try and cancel it and wait in line
-                return;
-            } else {
-                // Clear out the current snackbar
-                mCurrentSnackbar = null;
-                // Otherwise, just show it now
-                showNextSnackbarLocked();
+        @Override
+        public void onTimeout(ToastRecord record) {
+            JToastTrace.record(JToastTrace.EVENT_TIMEOUT, 0);
+        }
+
+        @Override
+        public void onDismiss(ToastRecord record, int event) {
+            JToastTrace.record(JToastTrace.EVENT_DISMISS, event);
+        }
+
+        @Override
+        public void onDropped(ToastRecord record, int event) {
+            JToastTrace.record(JToastTrace.EVENT_DROP, event);
+            final JToastMetrics.Listener metrics = JToastMetrics.sListener;
+            if (metrics != null) {
+                metrics.onDropped(event);
             }
         }
-    }
 
-    private boolean isCurrentSnackbar(JToastManager.Callback callback) {
-        return mCurrentSnackbar != null && mCurrentSnackbar.isSnackbar(callback);
+        @Override
+        public void onDismissed(ToastRecord record) {
+            JToastTrace.record(JToastTrace.EVENT_DISMISSED, record.getDismissEvent());
+            final JToastMetrics.Listener metrics = JToastMetrics.sListener;
+            if (metrics != null && record.getShownTime() > 0) {
+                metrics.onDismissed(record.getDurationMs(),
+                        SystemClock.uptimeMillis() - record.getShownTime(),
+                        record.getDismissEvent());
+            }
+        }
+    };
+
+    public void show(int duration, JToastManager.Callback callback) {
+        show(duration, JToast.PRIORITY_NORMAL, null, callback);
     }
 
-    private boolean isNextSnackbar(JToastManager.Callback callback) {
-        return mNextSnackbar != null && mNextSnackbar.isSnackbar(callback);
+    /**
+     * Show {@code callback} with the given {@link JToast.Priority}, in the lane of
+     * {@code channel}. Both are taken as they are now, whichever thread this is called on.
+     */
+    public void show(int duration, @JToast.Priority int priority, Object channel,
+                     JToastManager.Callback callback) {
+        mOps.post(OP_SHOW, callback, channel,
+                (Math.min(duration, MAX_SHOW_DURATION_MS) << PRIORITY_BITS)
+                        | (priority & PRIORITY_MASK));
     }
 
     public void dismiss(JToastManager.Callback callback, int event) {
-        synchronized (mLock) {
-            if (isCurrentSnackbar(callback)) {
-                cancelSnackbarLocked(mCurrentSnackbar, event);
-            } else if (isNextSnackbar(callback)) {
-                cancelSnackbarLocked(mNextSnackbar, event);
-            }
-        }
+        post(OP_DISMISS, callback, event);
     }
 
     /**
@@ -103,15 +286,7 @@ public class JToastManager {
      * animation has finished.
      */
     public void onDismissed(JToastManager.Callback callback) {
-        synchronized (mLock) {
-            if (isCurrentSnackbar(callback)) {
-                // If the callback is from a Snackbar currently show, remove it and show a new one
-                mCurrentSnackbar = null;
-                if (mNextSnackbar != null) {
-                    showNextSnackbarLocked();
-                }
-            }
-        }
+        post(OP_ON_DISMISSED, callback, 0);
     }
 
     /**
@@ -119,102 +294,286 @@ public class JToastManager {
      * finished.
      */
     public void onShown(JToastManager.Callback callback) {
-        synchronized (mLock) {
-            if (isCurrentSnackbar(callback)) {
-                scheduleTimeoutLocked(mCurrentSnackbar);
-            }
-        }
+        post(OP_ON_SHOWN, callback, 0);
     }
 
     public void cancelTimeout(JToastManager.Callback callback) {
-        synchronized (mLock) {
-            if (isCurrentSnackbar(callback)) {
-                mHandler.removeCallbacksAndMessages(mCurrentSnackbar);
-            }
-        }
+        post(OP_CANCEL_TIMEOUT, callback, 0);
     }
 
     public void restoreTimeout(JToastManager.Callback callback) {
-        synchronized (mLock) {
-            if (isCurrentSnackbar(callback)) {
-                scheduleTimeoutLocked(mCurrentSnackbar);
-            }
-        }
+        post(OP_RESTORE_TIMEOUT, callback, 0);
     }
 
-    private static class SnackbarRecord {
-        private final WeakReference<JToastManager.Callback> callback;
-        private int duration;
+    /**
+     * Set how many Snackbars may wait behind the current one. Records beyond the capacity are
+     * dropped according to the overflow policy.
+     */
+    public void setQueueCapacity(int capacity) {
+        post(OP_SET_CAPACITY, null, Math.max(1, capacity));
+    }
 
-        SnackbarRecord(int duration, JToastManager.Callback callback) {
-            this.callback = new WeakReference<>(callback);
-            this.duration = duration;
-        }
+    public void setOverflowPolicy(@JToast.OverflowPolicy int policy) {
+        post(OP_SET_OVERFLOW_POLICY, null, policy);
+    }
+
+    /**
+     * Set how many Snackbars may wait in the lane of {@code channel}, or go back to the shared
+     * capacity if {@code capacity} is 0.
+     */
+    public void setChannelCapacity(Object channel, int capacity) {
+        post(OP_SET_CHANNEL_CAPACITY, channel, capacity);
+    }
+
+    /**
+     * Collapse bursts of queued Snackbars, in every lane on its own, into one summary built by
+     * {@code summarizer}, see
+     * {@link ToastScheduler#setAggregation(ToastScheduler.Aggregator, int, long)}.
+     *
+     * @param summarizer null to turn aggregation off
+     */
+    void setAggregation(int threshold, long windowMs, Summarizer summarizer) {
+        post(OP_SET_AGGREGATION, new Aggregation(threshold, windowMs, summarizer), 0);
+    }
+
+    /**
+     * Return the number of Snackbars waiting to be shown, not counting the current one. Safe to
+     * call from any thread.
+     */
+    public int getQueueDepth() {
+        return mQueueDepth;
+    }
 
-        boolean isSnackbar(JToastManager.Callback callback) {
-            return callback != null && this.callback.get() == callback;
+    private void post(int op, Object subject, int arg) {
+        mOps.post(op, subject, arg);
+    }
+
+    private void apply(int op, Object subject, Object extra, int arg) {
+        final JToastManager.Callback callback =
+                subject instanceof JToastManager.Callback ? (JToastManager.Callback) subject : null;
+        final JToastManager.SnackbarRecord record = callback != null ? callback.record : null;
+        switch (op) {
+            case OP_SHOW:
+                final boolean traced = JToastTrace.beginSection(JToastTrace.SECTION_ENQUEUE);
+                try {
+                    handleShow(arg >> PRIORITY_BITS, arg & PRIORITY_MASK, extra, callback);
+                } finally {
+                    JToastTrace.endSection(traced);
+                }
+                break;
+            case OP_DISMISS:
+                if (record != null && record.lane != null) {
+                    record.lane.dismiss(record, arg);
+                }
+                break;
+            case OP_ON_SHOWN:
+                if (record != null && record.lane != null) {
+                    record.lane.onShown(record);
+                }
+                break;
+            case OP_ON_DISMISSED:
+                if (record != null && record.lane != null) {
+                    record.lane.onDismissed(record);
+                }
+                break;
+            case OP_CANCEL_TIMEOUT:
+                if (record != null && record.lane != null) {
+                    record.lane.pauseTimeout(record);
+                }
+                break;
+            case OP_RESTORE_TIMEOUT:
+                if (record != null && record.lane != null) {
+                    record.lane.resumeTimeout(record);
+                }
+                break;
+            case OP_SET_CAPACITY:
+                mLanes.setCapacity(arg);
+                break;
+            case OP_SET_OVERFLOW_POLICY:
+                mLanes.setOverflowPolicy(toSchedulerPolicy(arg));
+                break;
+            case OP_SET_CHANNEL_CAPACITY:
+                // The subject is the channel itself, whatever its type
+                mLanes.setLaneCapacity(subject, arg);
+                break;
+            case OP_SET_AGGREGATION:
+                final Aggregation aggregation = (Aggregation) subject;
+                mLanes.setAggregation(aggregation.summarizer != null ? aggregation : null,
+                        aggregation.threshold, aggregation.windowMs);
+                break;
         }
+        mQueueDepth = mLanes.getQueueDepth();
     }
 
-    private void showNextSnackbarLocked() {
-        if (mNextSnackbar != null) {
-            mCurrentSnackbar = mNextSnackbar;
-            mNextSnackbar = null;
+    private void handleShow(int duration, int priority, Object channel,
+                            JToastManager.Callback callback) {
+        final JToastManager.SnackbarRecord record = obtainRecord(callback);
+        // Updates the duration of a record which is already showing or queued, too
+        record.setDurationMs(getDurationMs(duration));
+        record.setPriority(priority);
+        if (!record.isActive()) {
+            // A record which is already showing or queued stays in its lane
+            record.lane = mLanes.get(channel);
+        }
+        final ToastScheduler lane = record.lane;
 
-            final JToastManager.Callback callback = mCurrentSnackbar.callback.get();
-            if (callback != null) {
-                callback.show();
-            } else {
-                // The callback doesn't exist any more, clear out the Snackbar
-                mCurrentSnackbar = null;
+        final JToastManager.SnackbarRecord current =
+                (JToastManager.SnackbarRecord) lane.getCurrent();
+        if (current != null && current != record && current.callback.get() == null) {
+            // The current Snackbar doesn't exist any more, clear it out
+            lane.dismiss(current, JToast.Callback.DISMISS_EVENT_CONSECUTIVE);
+        }
+        if (lane.enqueue(record) == ToastScheduler.RESULT_REJECTED) {
+            // OVERFLOW_DROP_NEWEST with a full queue
+            JToastTrace.record(JToastTrace.EVENT_DROP, JToast.Callback.DISMISS_EVENT_CONSECUTIVE);
+            final JToastMetrics.Listener metrics = JToastMetrics.sListener;
+            if (metrics != null) {
+                metrics.onDropped(JToast.Callback.DISMISS_EVENT_CONSECUTIVE);
             }
+            callback.dismiss(JToast.Callback.DISMISS_EVENT_CONSECUTIVE);
         }
     }
 
+    private static JToastManager.SnackbarRecord obtainRecord(JToastManager.Callback callback) {
+        // Every callback keeps its own record, so showing the same JToast again doesn't
+        // allocate anything
+        JToastManager.SnackbarRecord record = callback.record;
+        if (record == null) {
+            record = new JToastManager.SnackbarRecord(callback);
+            callback.record = record;
+        }
+        return record;
+    }
 
+    private static int toSchedulerPolicy(@JToast.OverflowPolicy int policy) {
+        switch (policy) {
+            case JToast.OVERFLOW_DROP_NEWEST:
+                return ToastScheduler.OVERFLOW_DROP_NEWEST;
+            case JToast.OVERFLOW_REPLACE_CURRENT:
+                return ToastScheduler.OVERFLOW_REPLACE_CURRENT;
+            case JToast.OVERFLOW_DROP_OLDEST:
+            default:
+                return ToastScheduler.OVERFLOW_DROP_OLDEST;
+        }
+    }
+
+    /**
+     * A Snackbar known to the {@link ToastScheduler}. A record belongs to exactly one
+     * {@link Callback} and is reused every time it is shown.
+     */
+    static class SnackbarRecord extends ToastRecord {
+        private final WeakReference<JToastManager.Callback> callback;
+        /**
+         * The lane the record was last enqueued in.
+         */
+        ToastScheduler lane;
 
-    private void scheduleTimeoutLocked(JToastManager.SnackbarRecord r) {
-        if (r.duration == JToast.LENGTH_INDEFINITE) {
-            // If we're set to indefinite, we don't want to set a timeout
-            return;
+        SnackbarRecord(JToastManager.Callback callback) {
+            this.callback = new WeakReference<>(callback);
         }
+    }
 
+    /**
+     * @return the duration in milliseconds, or -1 for {@link JToast#LENGTH_INDEFINITE}
+     */
+    private static int getDurationMs(int duration) {
+        if (duration == JToast.LENGTH_INDEFINITE) {
+            return ToastRecord.DURATION_INDEFINITE;
+        }
         int durationMs = LONG_DURATION_MS;
-        if (r.duration > 0) {
-            durationMs = r.duration;
-        } else if (r.duration == JToast.LENGTH_SHORT) {
+        if (duration > 0) {
+            durationMs = duration;
+        } else if (duration == JToast.LENGTH_SHORT) {
             durationMs = SHORT_DURATION_MS;
         }
-        mHandler.removeCallbacksAndMessages(r);
-        mHandler.sendMessageDelayed(Message.obtain(mHandler, MSG_TIMEOUT, r), 2000);
+        return durationMs;
     }
 
-    private void handleTimeout(JToastManager.SnackbarRecord record) {
-        synchronized (mLock) {
-            if (mCurrentSnackbar == record || mNextSnackbar == record) {
-                cancelSnackbarLocked(record, JToast.Callback.DISMISS_EVENT_TIMEOUT);
-            }
-        }
+    /**
+     * Run the timeout of {@code record} now, as its MSG_TIMEOUT message would.
+     */
+    @VisibleForTesting
+    void handleTimeout(JToastManager.SnackbarRecord record) {
+        record.lane.timeout(record);
     }
 
-    private boolean cancelSnackbarLocked(JToastManager.SnackbarRecord record, int event) {
-        final JToastManager.Callback callback = record.callback.get();
-        if (callback != null) {
-            callback.dismiss(event);
-            return true;
-        }
-        return false;
+
+    /**
+     * Builds the Snackbar shown in place of a burst. Called on the main thread.
+     */
+    interface Summarizer {
+        /**
+         * @param collapsed the callbacks of every queued Snackbar, oldest first; only valid
+         *                  during this call
+         * @return the callback of the summary, shown for {@link JToast#LENGTH_LONG}, or null to
+         * leave the queue alone
+         */
+        JToastManager.Callback summarize(List<JToastManager.Callback> collapsed);
     }
 
+    /**
+     * Aggregation settings on their way to the main thread, and the bridge from the
+     * {@link ToastScheduler}'s records to the {@link Summarizer}'s callbacks.
+     */
+    private static final class Aggregation implements ToastScheduler.Aggregator {
+        final int threshold;
+        final long windowMs;
+        final Summarizer summarizer;
+        private final ArrayList<JToastManager.Callback> mCallbacks = new ArrayList<>();
+
+        Aggregation(int threshold, long windowMs, Summarizer summarizer) {
+            this.threshold = threshold;
+            this.windowMs = windowMs;
+            this.summarizer = summarizer;
+        }
+
+        @Override
+        public ToastRecord aggregate(List<ToastRecord> collapsed) {
+            final ArrayList<JToastManager.Callback> callbacks = mCallbacks;
+            try {
+                for (int i = 0, size = collapsed.size(); i < size; i++) {
+                    final JToastManager.Callback callback =
+                            ((SnackbarRecord) collapsed.get(i)).callback.get();
+                    if (callback != null) {
+                        callbacks.add(callback);
+                    }
+                }
+                final JToastManager.Callback summary =
+                        callbacks.isEmpty() ? null : summarizer.summarize(callbacks);
+                if (summary == null) {
+                    return null;
+                }
+                // As important as the most important Snackbar it replaces
+                int priority = JToast.PRIORITY_LOW;
+                for (int i = 0, size = collapsed.size(); i < size; i++) {
+                    priority = Math.max(priority, collapsed.get(i).getPriority());
+                }
+                final JToastManager.SnackbarRecord record = obtainRecord(summary);
+                record.setDurationMs(getDurationMs(JToast.LENGTH_LONG));
+                record.setPriority(priority);
+                // Shown in the lane of the Snackbars it replaces
+                record.lane = ((SnackbarRecord) collapsed.get(0)).lane;
+                return record;
+            } finally {
+                callbacks.clear();
+            }
+        }
+    }
 
     /**
      * Manager回调
      */
-    interface Callback {
+    abstract static class Callback {
+        /**
+         * The record of this callback, created the first time it is shown and reused afterwards.
+         * Only accessed on the main thread.
+         */
+        JToastManager.SnackbarRecord record;
+
         //显示
-        void show();
+        abstract void show();
         //关闭
-        void dismiss(int event);
+        abstract void dismiss(int event);
     }
 
 
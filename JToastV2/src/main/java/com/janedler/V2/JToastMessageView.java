@@ -0,0 +1,108 @@
+package com.janedler.V2;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.AttributeSet;
+import android.widget.TextView;
+
+/**
+ * The message view of {@code ui_v2_toast_layout}: a {@link TextView} which can measure and draw a
+ * layout built ahead of time by {@link JToastTextLayouts}, instead of breaking the lines itself
+ * on the main thread.
+ * <p>
+ * The precomputed layout is only used while it matches what {@link TextView} would have built
+ * for the same width, and is dropped as soon as the text changes.
+ * <p>
+ * Public because it is inflated from XML: {@code LayoutInflater} needs a public class and a
+ * public {@code (Context, AttributeSet)} constructor.
+ */
+public final class JToastMessageView extends TextView {
+
+    private JToastTextLayouts.Entry mPrecomputed;
+
+    public JToastMessageView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    /**
+     * Use {@code entry} for the current text. Must be called after {@link #setText}.
+     */
+    void setPrecomputedLayout(JToastTextLayouts.Entry entry) {
+        if (mPrecomputed == entry) {
+            return;
+        }
+        mPrecomputed = entry;
+        requestLayout();
+        invalidate();
+    }
+
+    @Override
+    protected void onTextChanged(CharSequence text, int start, int lengthBefore, int lengthAfter) {
+        super.onTextChanged(text, start, lengthBefore, lengthAfter);
+        if (mPrecomputed != null) {
+            // TextView never built its own layout, so it won't ask for a new measure by itself
+            mPrecomputed = null;
+            requestLayout();
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final JToastTextLayouts.Entry entry = mPrecomputed;
+        if (entry != null && !fits(entry, widthMeasureSpec)) {
+            mPrecomputed = null;
+        }
+        if (mPrecomputed == null) {
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            return;
+        }
+        final int width = entry.desiredWidth + getPaddingLeft() + getPaddingRight();
+        final int height = entry.layout.getHeight() + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec),
+                resolveSize(height, heightMeasureSpec));
+    }
+
+    /**
+     * Whether TextView would break the lines where {@code entry} does: the text size still matches
+     * (the font scale may have changed since), and either nothing wraps or it wraps at the same
+     * width.
+     */
+    private boolean fits(JToastTextLayouts.Entry entry, int widthMeasureSpec) {
+        if (MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.UNSPECIFIED
+                || entry.layout.getPaint().getTextSize() != getTextSize()) {
+            return false;
+        }
+        final int available = MeasureSpec.getSize(widthMeasureSpec)
+                - getPaddingLeft() - getPaddingRight();
+        return entry.desiredWidth <= available || entry.layout.getWidth() == available;
+    }
+
+    @Override
+    public int getBaseline() {
+        final JToastTextLayouts.Entry entry = mPrecomputed;
+        if (entry == null) {
+            return super.getBaseline();
+        }
+        return getPaddingTop() + entry.layout.getLineBaseline(0);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        final JToastTextLayouts.Entry entry = mPrecomputed;
+        if (entry == null) {
+            super.onDraw(canvas);
+            return;
+        }
+        final StaticLayout layout = entry.layout;
+        final TextPaint paint = layout.getPaint();
+        paint.setColor(getCurrentTextColor());
+        paint.drawableState = getDrawableState();
+        canvas.save();
+        canvas.translate(getPaddingLeft(), getPaddingTop());
+        layout.draw(canvas);
+        canvas.restore();
+    }
+}
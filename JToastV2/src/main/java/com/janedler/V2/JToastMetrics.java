@@ -0,0 +1,284 @@
+package com.janedler.V2;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Entry point for JToast metrics. Register a {@link Listener} (for example a {@link Recorder})
+ * with {@link #setListener(Listener)}; while no listener is registered nothing is timed or
+ * counted, the hot paths only read one volatile field.
+ */
+public final class JToastMetrics {
+
+    static volatile JToastMetrics.Listener sListener;
+
+    private JToastMetrics() {
+    }
+
+    /**
+     * Set the listener fed from the enqueue, show, timeout and dismiss paths, or null to stop
+     * collecting. Callbacks arrive on the main thread, except {@link Listener#onInflated(long)}
+     * which arrives wherever the view was inflated.
+     */
+    public static void setListener(JToastMetrics.Listener listener) {
+        sListener = listener;
+    }
+
+    public static JToastMetrics.Listener getListener() {
+        return sListener;
+    }
+
+    /**
+     * Receives JToast events. All methods are empty by default.
+     */
+    public static abstract class Listener {
+        /**
+         * A JToast entered the queue.
+         *
+         * @param queueDepth number of JToasts waiting behind the current one afterwards
+         */
+        public void onEnqueued(int queueDepth) {
+            // empty
+        }
+
+        /**
+         * A JToast became visible, after its enter animation.
+         *
+         * @param latencyMs time from {@link JToast#show()} until now
+         */
+        public void onShown(long latencyMs) {
+            // empty
+        }
+
+        /**
+         * A visible JToast has been dismissed, after its exit animation.
+         *
+         * @param requestedMs the duration the JToast asked for, or -1 for
+         *                    {@link JToast#LENGTH_INDEFINITE}
+         * @param visibleMs   how long it was actually on screen
+         * @param event       the {@link JToast.Callback.DismissEvent} which dismissed it, or
+         *                    {@link JToast.Callback#DISMISS_EVENT_PREEMPTED} if it only made
+         *                    room for a more important JToast and will be shown again
+         */
+        public void onDismissed(long requestedMs, long visibleMs,
+                                @JToast.Callback.DismissEvent int event) {
+            // empty
+        }
+
+        /**
+         * A JToast was removed before it was ever shown, e.g. dropped by the overflow policy
+         * ({@link JToast.Callback#DISMISS_EVENT_CONSECUTIVE}), collapsed into a summary
+         * ({@link JToast.Callback#DISMISS_EVENT_AGGREGATED}) or dismissed while queued.
+         */
+        public void onDropped(@JToast.Callback.DismissEvent int event) {
+            // empty
+        }
+
+        /**
+         * A JToast view had to be inflated because the view pool was empty.
+         */
+        public void onInflated(long nanos) {
+            // empty
+        }
+
+        /**
+         * A {@link JToast#RENDER_MODE_HOST} host measured and laid out its JToasts.
+         */
+        public void onLayout(long nanos) {
+            // empty
+        }
+    }
+
+    /**
+     * Listener keeping counters and latency histograms, safe to read from any thread.
+     */
+    public static class Recorder extends JToastMetrics.Listener {
+        private final AtomicLong mEnqueued = new AtomicLong();
+        private final AtomicLong mShown = new AtomicLong();
+        private final AtomicLong mTimedOut = new AtomicLong();
+        private final AtomicLong mSuperseded = new AtomicLong();
+        private final AtomicLong mDropped = new AtomicLong();
+
+        private final JToastMetrics.Histogram mQueueDepth = new JToastMetrics.Histogram();
+        private final JToastMetrics.Histogram mShowLatency = new JToastMetrics.Histogram();
+        private final JToastMetrics.Histogram mVisibleTime = new JToastMetrics.Histogram();
+        private final JToastMetrics.Histogram mVisibleOvershoot = new JToastMetrics.Histogram();
+        private final JToastMetrics.Histogram mInflateTime = new JToastMetrics.Histogram();
+        private final JToastMetrics.Histogram mLayoutTime = new JToastMetrics.Histogram();
+
+        @Override
+        public void onEnqueued(int queueDepth) {
+            mEnqueued.incrementAndGet();
+            mQueueDepth.record(queueDepth);
+        }
+
+        @Override
+        public void onShown(long latencyMs) {
+            mShown.incrementAndGet();
+            mShowLatency.record(latencyMs);
+        }
+
+        @Override
+        public void onDismissed(long requestedMs, long visibleMs, int event) {
+            if (event == JToast.Callback.DISMISS_EVENT_TIMEOUT) {
+                mTimedOut.incrementAndGet();
+            } else if (event == JToast.Callback.DISMISS_EVENT_CONSECUTIVE) {
+                mSuperseded.incrementAndGet();
+            }
+            mVisibleTime.record(visibleMs);
+            if (requestedMs >= 0) {
+                mVisibleOvershoot.record(Math.max(0, visibleMs - requestedMs));
+            }
+        }
+
+        @Override
+        public void onDropped(int event) {
+            mDropped.incrementAndGet();
+        }
+
+        @Override
+        public void onInflated(long nanos) {
+            mInflateTime.record(nanos / 1000);
+        }
+
+        @Override
+        public void onLayout(long nanos) {
+            mLayoutTime.record(nanos / 1000);
+        }
+
+        public long getEnqueuedCount() {
+            return mEnqueued.get();
+        }
+
+        public long getShownCount() {
+            return mShown.get();
+        }
+
+        public long getTimedOutCount() {
+            return mTimedOut.get();
+        }
+
+        /**
+         * Visible JToasts cut short by a newer one ({@link JToast#OVERFLOW_REPLACE_CURRENT}).
+         */
+        public long getSupersededCount() {
+            return mSuperseded.get();
+        }
+
+        /**
+         * JToasts which were never shown.
+         */
+        public long getDroppedCount() {
+            return mDropped.get();
+        }
+
+        /**
+         * Queue depth sampled on every enqueue.
+         */
+        public JToastMetrics.Histogram getQueueDepth() {
+            return mQueueDepth;
+        }
+
+        /**
+         * Time from {@link JToast#show()} until visible, in milliseconds.
+         */
+        public JToastMetrics.Histogram getShowLatency() {
+            return mShowLatency;
+        }
+
+        /**
+         * Actual time on screen, in milliseconds.
+         */
+        public JToastMetrics.Histogram getVisibleTime() {
+            return mVisibleTime;
+        }
+
+        /**
+         * How much longer than requested JToasts stayed on screen, in milliseconds.
+         */
+        public JToastMetrics.Histogram getVisibleOvershoot() {
+            return mVisibleOvershoot;
+        }
+
+        /**
+         * View inflation time, in microseconds.
+         */
+        public JToastMetrics.Histogram getInflateTime() {
+            return mInflateTime;
+        }
+
+        /**
+         * Host measure and layout time, in microseconds.
+         */
+        public JToastMetrics.Histogram getLayoutTime() {
+            return mLayoutTime;
+        }
+    }
+
+    /**
+     * Lock-free histogram with power-of-two buckets: bucket {@code i} counts values in
+     * {@code [2^(i-1), 2^i)}, bucket 0 counts values {@code <= 0}. Percentiles are reported as
+     * the upper bound of their bucket, which is precise enough to spot regressions.
+     */
+    public static final class Histogram {
+        private static final int BUCKET_COUNT = 64;
+
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mSum = new AtomicLong();
+        private final AtomicLong mMax = new AtomicLong();
+
+        public void record(long value) {
+            final int bucket = value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+            mBuckets.incrementAndGet(Math.min(bucket, BUCKET_COUNT - 1));
+            mCount.incrementAndGet();
+            mSum.addAndGet(value);
+            long max;
+            while (value > (max = mMax.get()) && !mMax.compareAndSet(max, value)) {
+                // retry
+            }
+        }
+
+        public long getCount() {
+            return mCount.get();
+        }
+
+        public long getMax() {
+            return mMax.get();
+        }
+
+        public double getMean() {
+            final long count = mCount.get();
+            return count == 0 ? 0 : (double) mSum.get() / count;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the upper bound of the bucket holding the given percentile
+         */
+        public long getPercentile(double percentile) {
+            final long count = mCount.get();
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = (long) Math.ceil(count * percentile / 100d);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += mBuckets.get(i);
+                if (seen >= rank) {
+                    return i == 0 ? 0 : Math.min((1L << i) - 1, mMax.get());
+                }
+            }
+            return mMax.get();
+        }
+
+        public void reset() {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                mBuckets.set(i, 0);
+            }
+            mCount.set(0);
+            mSum.set(0);
+            mMax.set(0);
+        }
+    }
+}
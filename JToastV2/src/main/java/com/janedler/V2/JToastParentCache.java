@@ -0,0 +1,89 @@
+package com.janedler.V2;
+
+import android.os.Looper;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Caches the parent resolved by {@link JToast#make(View, CharSequence, int)}, so repeated toasts
+ * from the same view don't walk the view hierarchy again.
+ * <p>
+ * Only the view a toast was made from is remembered, together with its host and the decor view
+ * of the host's window. Everything is held weakly, and all entries of a window are dropped once
+ * its decor view is detached, which also happens when the Activity is destroyed. The cache is
+ * only written on the main thread, which owns the views; lookups may come from any thread.
+ */
+final class JToastParentCache {
+
+    private static final class Entry {
+        final WeakReference<ViewGroup> host;
+        final WeakReference<View> decor;
+
+        Entry(ViewGroup host, View decor) {
+            this.host = new WeakReference<>(host);
+            this.decor = new WeakReference<>(decor);
+        }
+    }
+
+    private static final WeakHashMap<View, Entry> sCache = new WeakHashMap<>();
+
+    private static final View.OnAttachStateChangeListener sInvalidator =
+            new View.OnAttachStateChangeListener() {
+                @Override
+                public void onViewAttachedToWindow(View v) {
+                    // empty
+                }
+
+                @Override
+                public void onViewDetachedFromWindow(View v) {
+                    v.removeOnAttachStateChangeListener(this);
+                    v.setTag(R.id.jtoast_parent_cache, null);
+                    invalidate(v);
+                }
+            };
+
+    private JToastParentCache() {
+    }
+
+    /**
+     * Return the cached host for {@code view}, or null if it has not been resolved yet.
+     */
+    static synchronized ViewGroup get(View view) {
+        final Entry entry = sCache.get(view);
+        return entry != null ? entry.host.get() : null;
+    }
+
+    /**
+     * Remember {@code host} for {@code view}. Only hosts which are attached to a window are
+     * cached, as only those can be invalidated, and only on the main thread.
+     */
+    static void put(View view, ViewGroup host) {
+        if (Looper.myLooper() != Looper.getMainLooper() || host.getWindowToken() == null) {
+            return;
+        }
+        final View decor = host.getRootView();
+        if (decor.getTag(R.id.jtoast_parent_cache) == null) {
+            decor.setTag(R.id.jtoast_parent_cache, Boolean.TRUE);
+            decor.addOnAttachStateChangeListener(sInvalidator);
+        }
+        synchronized (JToastParentCache.class) {
+            sCache.put(view, new Entry(host, decor));
+        }
+    }
+
+    private static synchronized void invalidate(View decor) {
+        final Iterator<Map.Entry<View, Entry>> it = sCache.entrySet().iterator();
+        while (it.hasNext()) {
+            final Entry entry = it.next().getValue();
+            final View cached = entry.decor.get();
+            if (cached == null || cached == decor || entry.host.get() == null) {
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.janedler.V2;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.DisplayMetrics;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import com.janedler.core.TextLayoutCache;
+
+/**
+ * Text layouts of toast messages, built on a background thread when a {@link JToast} is shown so
+ * that {@link JToastMessageView} only has to attach them on the main thread, and kept in a small
+ * {@link TextLayoutCache} so a recurring message is laid out once.
+ * <p>
+ * Layouts are built for the message width of a full-width parent. The view falls back to laying
+ * out the text itself whenever the real width disagrees, or the layout isn't ready in time.
+ */
+final class JToastTextLayouts {
+
+    private static final int MAX_CACHED_LAYOUTS = 16;
+
+    static final class Entry {
+        final StaticLayout layout;
+        /**
+         * Width of the widest paragraph without wrapping, like {@link TextView} measures it.
+         */
+        final int desiredWidth;
+
+        Entry(StaticLayout layout, int desiredWidth) {
+            this.layout = layout;
+            this.desiredWidth = desiredWidth;
+        }
+    }
+
+    /**
+     * Paint and message width of {@code ui_v2_toast_layout}. Only touched on the worker thread.
+     */
+    private static final class Template {
+        final TextPaint paint;
+        final int width;
+        final int generation;
+
+        Template(TextPaint paint, int width, int generation) {
+            this.paint = paint;
+            this.width = width;
+            this.generation = generation;
+        }
+    }
+
+    private static final TextLayoutCache<Entry> sCache = new TextLayoutCache<>(MAX_CACHED_LAYOUTS);
+
+    /**
+     * Text size and width of the current template, published by the worker once it is built and
+     * used to look layouts up.
+     */
+    private static volatile float sTextSize;
+    private static volatile int sWidth;
+
+    private static Handler sWorker;
+    private static Template sTemplate;
+
+    private JToastTextLayouts() {
+    }
+
+    /**
+     * Start building the layout of {@code text} in the background, unless it's short or cached.
+     */
+    static void precompute(Context context, final CharSequence text) {
+        if (!TextLayoutCache.shouldPrecompute(text) || get(text) != null) {
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        getWorker().post(new Runnable() {
+            @Override
+            public void run() {
+                build(appContext, text);
+            }
+        });
+    }
+
+    /**
+     * The layout of {@code text} if it's ready, {@code null} otherwise.
+     */
+    static Entry get(CharSequence text) {
+        if (text == null) {
+            return null;
+        }
+        return sCache.get(text, sTextSize, sWidth);
+    }
+
+    /**
+     * Drop every cached layout.
+     */
+    static void clear() {
+        sCache.clear();
+    }
+
+    private static synchronized Handler getWorker() {
+        if (sWorker == null) {
+            final HandlerThread thread = new HandlerThread("JToast-text",
+                    Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            sWorker = new Handler(thread.getLooper());
+        }
+        return sWorker;
+    }
+
+    private static void build(Context context, CharSequence text) {
+        if (get(text) != null) {
+            // Posted more than once before the first one finished
+            return;
+        }
+        final int generation = sCache.getGeneration();
+        final boolean traced = JToastTrace.beginSection(JToastTrace.SECTION_TEXT_LAYOUT);
+        try {
+            Template template = sTemplate;
+            if (template == null || template.generation != generation) {
+                template = sTemplate = createTemplate(context, generation);
+                sTextSize = template.paint.getTextSize();
+                sWidth = template.width;
+            }
+            // Each layout draws with its own paint, the view sets its colour on the main thread
+            final TextPaint paint = new TextPaint(template.paint);
+            final int desiredWidth = (int) Math.ceil(Layout.getDesiredWidth(text, paint));
+            // ui_v2_toast_layout leaves line spacing and font padding at TextView's defaults
+            final StaticLayout layout = new StaticLayout(text, paint, template.width,
+                    Layout.Alignment.ALIGN_NORMAL, 1f, 0f, true);
+            sCache.put(text, template.paint.getTextSize(), template.width, generation,
+                    new Entry(layout, desiredWidth));
+        } finally {
+            JToastTrace.endSection(traced);
+        }
+    }
+
+    private static Template createTemplate(Context context, int generation) {
+        final View view = JToastViewPool.inflate(context, new FrameLayout(context));
+        final TextView message = (TextView) view.findViewById(R.id.message);
+        final ViewGroup.MarginLayoutParams params =
+                (ViewGroup.MarginLayoutParams) message.getLayoutParams();
+        final DisplayMetrics display = context.getResources().getDisplayMetrics();
+        final int width = display.widthPixels - params.leftMargin - params.rightMargin
+                - message.getPaddingLeft() - message.getPaddingRight();
+        return new Template(new TextPaint(message.getPaint()), Math.max(0, width), generation);
+    }
+}
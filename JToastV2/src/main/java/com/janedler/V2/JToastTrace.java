@@ -0,0 +1,144 @@
+package com.janedler.V2;
+
+import android.os.SystemClock;
+import android.support.v4.os.TraceCompat;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tracing for JToast's hot paths, disabled by default.
+ * <p>
+ * While enabled, enqueue, inflate, addView/removeView and timeout run inside
+ * {@link android.os.Trace} sections, so they show up in systrace and Perfetto, and every JToast
+ * event is written as a single {@code long} into a fixed-size ring buffer which can be dumped
+ * after a jank report with {@link #dump()}. Section names are constants and events are packed
+ * numbers, so nothing is formatted until the buffer is dumped. While disabled every call is a
+ * single volatile read.
+ */
+public final class JToastTrace {
+
+    static final String SECTION_ENQUEUE = "JToast:enqueue";
+    static final String SECTION_INFLATE = "JToast:inflate";
+    static final String SECTION_ADD_VIEW = "JToast:addView";
+    static final String SECTION_REMOVE_VIEW = "JToast:removeView";
+    static final String SECTION_TIMEOUT = "JToast:timeout";
+    static final String SECTION_TEXT_LAYOUT = "JToast:textLayout";
+
+    public static final int EVENT_ENQUEUE = 1;
+    public static final int EVENT_SHOW = 2;
+    public static final int EVENT_SHOWN = 3;
+    public static final int EVENT_TIMEOUT = 4;
+    public static final int EVENT_DISMISS = 5;
+    public static final int EVENT_DISMISSED = 6;
+    public static final int EVENT_DROP = 7;
+    public static final int EVENT_INFLATE = 8;
+
+    private static final String[] EVENT_NAMES = {
+            "?", "enqueue", "show", "shown", "timeout", "dismiss", "dismissed", "drop", "inflate"
+    };
+
+    /**
+     * Number of events kept, must be a power of two.
+     */
+    private static final int BUFFER_SIZE = 512;
+
+    // Packed event: | 40 bits uptime ms | 8 bits event | 16 bits argument |
+    private static final int ARG_BITS = 16;
+    private static final int EVENT_BITS = 8;
+    private static final long ARG_MASK = (1L << ARG_BITS) - 1;
+    private static final long EVENT_MASK = (1L << EVENT_BITS) - 1;
+
+    private static volatile boolean sEnabled;
+
+    private static final AtomicLongArray sBuffer = new AtomicLongArray(BUFFER_SIZE);
+    private static final AtomicInteger sNext = new AtomicInteger();
+
+    private JToastTrace() {
+    }
+
+    /**
+     * Turn trace sections and event recording on or off.
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Open a trace section. Pass the result to the matching {@link #endSection(boolean)}, so
+     * that turning tracing on or off in between never leaves the sections unbalanced.
+     *
+     * @return whether a section was opened
+     */
+    static boolean beginSection(String name) {
+        if (!sEnabled) {
+            return false;
+        }
+        TraceCompat.beginSection(name);
+        return true;
+    }
+
+    /**
+     * Close the section opened by {@link #beginSection(String)}, if it opened one.
+     */
+    static void endSection(boolean began) {
+        if (began) {
+            TraceCompat.endSection();
+        }
+    }
+
+    /**
+     * Record an event. {@code arg} is clamped to 16 bits, e.g. a queue depth or a dismiss event.
+     */
+    static void record(int event, int arg) {
+        if (!sEnabled) {
+            return;
+        }
+        final long packed = (SystemClock.uptimeMillis() << (EVENT_BITS + ARG_BITS))
+                | ((event & EVENT_MASK) << ARG_BITS)
+                | (Math.min(Math.max(arg, 0), ARG_MASK));
+        sBuffer.lazySet(sNext.getAndIncrement() & (BUFFER_SIZE - 1), packed);
+    }
+
+    /**
+     * Drop every recorded event.
+     */
+    public static void clear() {
+        for (int i = 0; i < BUFFER_SIZE; i++) {
+            sBuffer.set(i, 0);
+        }
+    }
+
+    /**
+     * Return the recorded events, oldest first, one per line as
+     * {@code <uptime ms> <event> <argument>}.
+     */
+    public static String dump() {
+        final StringWriter out = new StringWriter();
+        dump(new PrintWriter(out));
+        return out.toString();
+    }
+
+    public static void dump(PrintWriter writer) {
+        final int next = sNext.get();
+        for (int i = 0; i < BUFFER_SIZE; i++) {
+            final long packed = sBuffer.get((next + i) & (BUFFER_SIZE - 1));
+            if (packed == 0) {
+                continue;
+            }
+            final int event = (int) ((packed >>> ARG_BITS) & EVENT_MASK);
+            writer.print(packed >>> (EVENT_BITS + ARG_BITS));
+            writer.print(' ');
+            writer.print(event < EVENT_NAMES.length ? EVENT_NAMES[event] : String.valueOf(event));
+            writer.print(' ');
+            writer.println(packed & ARG_MASK);
+        }
+        writer.flush();
+    }
+}
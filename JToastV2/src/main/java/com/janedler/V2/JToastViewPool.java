@@ -0,0 +1,205 @@
+package com.janedler.V2;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.DisplayMetrics;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import java.util.ArrayDeque;
+import java.util.WeakHashMap;
+
+/**
+ * Pool of inflated {@link JToast} views, kept per parent so that a burst of toasts on the same
+ * screen only parses {@code ui_v2_toast_layout} once.
+ * <p>
+ * Each parent holds its own pool as a view tag, so the pooled views (and the Activity they
+ * reference) go away together with the parent. Only accessed from the main thread.
+ */
+final class JToastViewPool {
+
+    static final int DEFAULT_MAX_POOL_SIZE = 3;
+
+    /**
+     * Every parent that currently owns a pool. The values never reference the keys, so the
+     * parents stay weakly reachable.
+     */
+    private static final WeakHashMap<ViewGroup, Boolean> sParents = new WeakHashMap<>();
+
+    /**
+     * Views inflated ahead of time by {@link #prewarm(Context)}, not tied to any parent yet. They
+     * are inflated with the application context, so holding them never leaks an Activity.
+     */
+    private static final ArrayDeque<View> sPrewarmed = new ArrayDeque<>(1);
+    private static volatile boolean sPrewarmStarted;
+
+    private static int sMaxPoolSize = DEFAULT_MAX_POOL_SIZE;
+    private static volatile int sHitCount;
+    private static volatile int sMissCount;
+    private static boolean sTrimCallbackRegistered;
+
+    private JToastViewPool() {
+    }
+
+    /**
+     * Check out a toast view for the given parent, inflating a new one if the pool is empty.
+     */
+    static View acquire(ViewGroup parent) {
+        final ArrayDeque<View> pool = getPool(parent, false);
+        View view = pool != null ? pool.poll() : null;
+        if (view == null) {
+            view = sPrewarmed.poll();
+        }
+        if (view != null) {
+            sHitCount++;
+            return view;
+        }
+        sMissCount++;
+        registerTrimCallback(parent.getContext());
+        return inflate(parent.getContext(), parent);
+    }
+
+    /**
+     * Inflate and measure one toast view on a background thread, and hand it to the first
+     * {@link #acquire(ViewGroup)} on the main thread. Only done once until the pool is cleared.
+     */
+    static void prewarm(Context context) {
+        if (sPrewarmStarted) {
+            return;
+        }
+        sPrewarmStarted = true;
+        final Context appContext = context.getApplicationContext();
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                // Any root works for the layout params, addView() converts them for the real parent
+                final View view = inflate(appContext, new FrameLayout(appContext));
+                // Measuring loads the background and text metrics as well
+                final DisplayMetrics display = appContext.getResources().getDisplayMetrics();
+                final int mode = View.MeasureSpec.AT_MOST;
+                view.measure(View.MeasureSpec.makeMeasureSpec(display.widthPixels, mode),
+                        View.MeasureSpec.makeMeasureSpec(display.heightPixels, mode));
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        registerTrimCallback(appContext);
+                        if (sPrewarmStarted && sMaxPoolSize > 0) {
+                            sPrewarmed.offer(view);
+                        }
+                    }
+                });
+            }
+        }, "JToast-prewarm").start();
+    }
+
+    static View inflate(Context context, ViewGroup root) {
+        final JToastMetrics.Listener metrics = JToastMetrics.sListener;
+        final long start = metrics != null ? System.nanoTime() : 0;
+        final boolean traced = JToastTrace.beginSection(JToastTrace.SECTION_INFLATE);
+        final View inflated;
+        try {
+            inflated = LayoutInflater.from(context).inflate(R.layout.ui_v2_toast_layout, root, false);
+        } finally {
+            JToastTrace.endSection(traced);
+        }
+        JToastTrace.record(JToastTrace.EVENT_INFLATE, 0);
+        if (metrics != null) {
+            metrics.onInflated(System.nanoTime() - start);
+        }
+        return inflated;
+    }
+
+    /**
+     * Return a view which has already been removed from its parent. Views beyond the pool size
+     * are dropped.
+     */
+    static void release(ViewGroup parent, View view) {
+        if (view == null || view.getParent() != null) {
+            return;
+        }
+        final ArrayDeque<View> pool = getPool(parent, true);
+        if (pool.size() < sMaxPoolSize) {
+            pool.offer(view);
+        }
+    }
+
+    /**
+     * Drop every pooled view, and the text layouts cached alongside them.
+     */
+    static void clear() {
+        for (ViewGroup parent : sParents.keySet()) {
+            // Drop the tag as well: the next release() creates a pool and registers the parent
+            // again, so later trims still reach it
+            parent.setTag(R.id.jtoast_view_pool, null);
+        }
+        sParents.clear();
+        sPrewarmed.clear();
+        JToastTextLayouts.clear();
+        // Allow prewarming again, e.g. for the new configuration
+        sPrewarmStarted = false;
+    }
+
+    static void setMaxPoolSize(int maxPoolSize) {
+        sMaxPoolSize = Math.max(0, maxPoolSize);
+        if (sMaxPoolSize == 0) {
+            sPrewarmed.clear();
+        }
+        for (ViewGroup parent : sParents.keySet()) {
+            final ArrayDeque<View> pool = getPool(parent, false);
+            while (pool != null && pool.size() > sMaxPoolSize) {
+                pool.poll();
+            }
+        }
+    }
+
+    static int getHitCount() {
+        return sHitCount;
+    }
+
+    static int getMissCount() {
+        return sMissCount;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArrayDeque<View> getPool(ViewGroup parent, boolean create) {
+        ArrayDeque<View> pool = (ArrayDeque<View>) parent.getTag(R.id.jtoast_view_pool);
+        if (pool == null && create) {
+            pool = new ArrayDeque<>(sMaxPoolSize);
+            parent.setTag(R.id.jtoast_view_pool, pool);
+            sParents.put(parent, Boolean.TRUE);
+        }
+        return pool;
+    }
+
+    private static void registerTrimCallback(Context context) {
+        if (sTrimCallbackRegistered) {
+            return;
+        }
+        sTrimCallbackRegistered = true;
+        context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                clear();
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+                // Views inflated for the old configuration must not be reused
+                clear();
+            }
+
+            @Override
+            public void onLowMemory() {
+                clear();
+            }
+        });
+    }
+}
@@ -0,0 +1,71 @@
+package com.janedler.V2;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs JToastManager's show -> timeout -> dismiss bookkeeping on the host JVM and checks that it
+ * stops allocating once it has been warmed up.
+ * <p>
+ * Handler and Looper are inert android.jar stubs here, so every call counts as being made on the
+ * main thread, and the timeout is fired through the {@link JToastManager#handleTimeout} hook.
+ * What this covers is the manager, its lanes and the scheduler; the Message and Choreographer
+ * delivery of the production path is not exercised.
+ */
+public class JToastManagerAllocationTest {
+
+    private static final int WARM_UP_CYCLES = 20000;
+    private static final int MEASURED_CYCLES = 10000;
+
+    /**
+     * Reports shown and dismissed straight away, like a JToast without animations.
+     */
+    private static class ImmediateCallback extends JToastManager.Callback {
+        int shown;
+
+        @Override
+        void show() {
+            shown++;
+            JToastManager.getInstance().onShown(this);
+        }
+
+        @Override
+        void dismiss(int event) {
+            JToastManager.getInstance().onDismissed(this);
+        }
+    }
+
+    private static void runCycle(JToastManager manager, ImmediateCallback callback) {
+        manager.show(JToast.LENGTH_SHORT, callback);
+        manager.handleTimeout(callback.record);
+    }
+
+    @Test
+    public void showTimeoutDismiss_allocatesNothingAfterWarmUp() throws Exception {
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final JToastManager manager = JToastManager.getInstance();
+        final ImmediateCallback callback = new ImmediateCallback();
+
+        for (int i = 0; i < WARM_UP_CYCLES; i++) {
+            runCycle(manager, callback);
+        }
+
+        // Whatever reading the counter allocates by itself
+        final long start = threads.getThreadAllocatedBytes(threadId);
+        final long overhead = threads.getThreadAllocatedBytes(threadId) - start;
+        final long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_CYCLES; i++) {
+            runCycle(manager, callback);
+        }
+        final long allocated = threads.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        assertEquals(WARM_UP_CYCLES + MEASURED_CYCLES, callback.shown);
+        assertEquals(0, manager.getQueueDepth());
+        assertEquals(0L, allocated);
+    }
+}
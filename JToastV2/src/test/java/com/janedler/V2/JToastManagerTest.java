@@ -0,0 +1,49 @@
+package com.janedler.V2;
+
+import com.janedler.core.ToastRecord;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks what JToastManager takes from a show() call, on the host JVM where Handler and Looper
+ * are inert android.jar stubs and every call counts as being made on the main thread.
+ */
+public class JToastManagerTest {
+
+    private static class IdleCallback extends JToastManager.Callback {
+        @Override
+        void show() {
+        }
+
+        @Override
+        void dismiss(int event) {
+        }
+    }
+
+    @Test
+    public void showKeepsThePriorityAndChannelItWasCalledWith() {
+        final JToastManager manager = JToastManager.getInstance();
+        final Object channel = new Object();
+        final IdleCallback indefinite = new IdleCallback();
+        final IdleCallback timed = new IdleCallback();
+
+        manager.show(JToast.LENGTH_INDEFINITE, JToast.PRIORITY_CRITICAL, channel, indefinite);
+        manager.show(4000, JToast.PRIORITY_LOW, channel, timed);
+
+        assertEquals(JToast.PRIORITY_CRITICAL, indefinite.record.getPriority());
+        assertEquals(ToastRecord.DURATION_INDEFINITE, indefinite.record.getDurationMs());
+        assertEquals(JToast.PRIORITY_LOW, timed.record.getPriority());
+        assertEquals(4000, timed.record.getDurationMs());
+        assertSame(indefinite.record.lane, timed.record.lane);
+        assertSame(indefinite.record, indefinite.record.lane.getCurrent());
+
+        // Leave the shared manager empty for the other tests
+        manager.dismiss(timed, JToast.Callback.DISMISS_EVENT_MANUAL);
+        manager.dismiss(indefinite, JToast.Callback.DISMISS_EVENT_MANUAL);
+        manager.onDismissed(indefinite);
+        assertEquals(0, manager.getQueueDepth());
+    }
+}